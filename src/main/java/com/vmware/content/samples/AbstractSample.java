@@ -14,16 +14,23 @@
  ******************************************************************************/
 package com.vmware.content.samples;
 
+import java.io.File;
+
 import com.vmware.content.samples.client.ClsApiClient;
+import com.vmware.content.samples.client.SessionCache;
+import com.vmware.content.samples.client.util.HttpUtil;
 import com.vmware.content.samples.client.util.IOUtil;
 import com.vmware.content.samples.client.util.LoginInfo;
-import com.vmware.content.samples.client.util.VimServiceManager;
 
 /**
  * Abstract class to do the setup and teardown tasks which every sample needs to do.
  * The business logic is implemented in {@link #runSample(String[])} method.
  */
 public abstract class AbstractSample {
+    /**
+     * System property naming a file in which the login is cached between runs.
+     */
+    public static final String SESSION_CACHE_PROPERTY = "cls.sessionCache";
 
     /**
      * Content Library API client.
@@ -60,6 +67,12 @@ public abstract class AbstractSample {
         LoginInfo loginInfo = LoginInfo.getLoginInfo();
         client = new ClsApiClient(loginInfo.getPlatformServiceControllerIp(),
                 loginInfo.getSsoUsername(), loginInfo.getSsoPassword());
+        String sessionCacheFile = System.getProperty(SESSION_CACHE_PROPERTY);
+        if (sessionCacheFile != null) {
+            client.setSessionCache(new SessionCache(new File(sessionCacheFile),
+                    loginInfo.getPlatformServiceControllerIp(), loginInfo.getSsoUsername(),
+                    loginInfo.getSsoPassword()));
+        }
         client.login();
         IOUtil.print("Logged in to Content Library API successfully.");
     }
@@ -68,7 +81,7 @@ public abstract class AbstractSample {
      * Logout from the clients.
      */
     private void tearDown() {
-        VimServiceManager.disconnectIfRequired();
+        HttpUtil.shutdown();
         client.logout();
     }
 }
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.library.ItemModel;
+import com.vmware.content.samples.client.ClsApiClient;
+import com.vmware.vim25.ManagedObjectReference;
+
+/**
+ * Asynchronous counterpart of {@link ClsApiHelper}: each operation runs on
+ * an executor chosen by the caller and returns a {@link Future}, and can
+ * notify a {@link Callback} when done. The printing helpers, and the ones
+ * used within an update session, such as
+ * {@link ClsApiHelper#verifyUploadedFile}, have no counterpart.
+ * <p>
+ * The operations block the thread running them, so running thousands of
+ * them at once is best done with {@link #newTaskExecutor(int)}, which uses
+ * a virtual thread per task on runtimes supporting them.
+ */
+public class AsyncClsApiHelper {
+    private final ClsApiClient client;
+    private final Executor executor;
+
+    /**
+     * Callback notified when an operation is done.
+     *
+     * @param <T> type of the result of the operation.
+     */
+    public interface Callback<T> {
+        void succeeded(T result);
+
+        void failed(Throwable cause);
+    }
+
+    /**
+     * @param client authenticated ClsApiClient.
+     * @param executor executor running the operations, owned by the caller.
+     */
+    public AsyncClsApiHelper(ClsApiClient client, Executor executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates an executor running each task on its own virtual thread when the
+     * runtime supports them, or on a fixed pool of platform threads otherwise.
+     *
+     * @param platformThreads number of threads of the fallback pool.
+     * @return the executor, to be shut down by the caller.
+     */
+    public static ExecutorService newTaskExecutor(int platformThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // runtime without virtual threads
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+
+    /**
+     * @see ClsApiHelper#createItem(ClsApiClient, String, String, String)
+     */
+    public Future<String> createItem(final String libraryId, final String itemName,
+            final String type, Callback<String> callback) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return ClsApiHelper.createItem(client, libraryId, itemName, type);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#createItems(ClsApiClient, String, List, int)
+     */
+    public Future<List<ClsApiHelper.CreateItemResult>> createItems(final String libraryId,
+            final List<ItemModel> specs, final int parallelism,
+            Callback<List<ClsApiHelper.CreateItemResult>> callback) {
+        return submit(new Callable<List<ClsApiHelper.CreateItemResult>>() {
+            @Override
+            public List<ClsApiHelper.CreateItemResult> call() throws InterruptedException {
+                return ClsApiHelper.createItems(client, libraryId, specs, parallelism);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#createLocalLibraryOnFileBacking(ClsApiClient, String, URI)
+     */
+    public Future<String> createLocalLibraryOnFileBacking(final String name, final URI storageUri,
+            Callback<String> callback) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return ClsApiHelper.createLocalLibraryOnFileBacking(client, name, storageUri);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#updateLocalLibrary(ClsApiClient, String, LibraryModel)
+     */
+    public Future<Void> updateLocalLibrary(final String libraryId, final LibraryModel libraryModel,
+            Callback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ClsApiHelper.updateLocalLibrary(client, libraryId, libraryModel);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#deleteLocalLibrary(ClsApiClient, String)
+     */
+    public Future<Void> deleteLocalLibrary(final String libraryId, Callback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ClsApiHelper.deleteLocalLibrary(client, libraryId);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#deleteItem(ClsApiClient, String)
+     */
+    public Future<Void> deleteItem(final String itemId, Callback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ClsApiHelper.deleteItem(client, itemId);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#getLibraryByName(ClsApiClient, String)
+     */
+    public Future<String> getLibraryByName(final String libraryName, Callback<String> callback) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return ClsApiHelper.getLibraryByName(client, libraryName);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#downloadFilesFromItem(ClsApiClient, String, String, int)
+     */
+    public Future<Void> downloadFilesFromItem(final String libraryItemId,
+            final String folderToDownloadFiles, final int parallelism, Callback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ClsApiHelper.downloadFilesFromItem(client, libraryItemId, folderToDownloadFiles,
+                        parallelism);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#importFileFromHttpUriToItem(ClsApiClient, String, String, String)
+     */
+    public Future<String> importFileFromHttpUriToItem(final String itemId, final String endpointUri,
+            final String fileName, Callback<String> callback) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return ClsApiHelper.importFileFromHttpUriToItem(client, itemId, endpointUri, fileName);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#uploadSingleFileFromLocalStorageToItem(ClsApiClient, String, String, String)
+     */
+    public Future<Void> uploadSingleFileFromLocalStorageToItem(final String itemId,
+            final String filePath, final String fileName, Callback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ClsApiHelper.uploadSingleFileFromLocalStorageToItem(client, itemId, filePath, fileName);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#syncFilesToItem(ClsApiClient, String, List)
+     */
+    public Future<List<String>> syncFilesToItem(final String itemId, final List<File> localFiles,
+            Callback<List<String>> callback) {
+        return submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                return ClsApiHelper.syncFilesToItem(client, itemId, localFiles);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see ClsApiHelper#getResourcePoolFromClusterName(ClsApiClient, String)
+     */
+    public Future<ManagedObjectReference> getResourcePoolFromClusterName(final String clusterName,
+            Callback<ManagedObjectReference> callback) {
+        return submit(new Callable<ManagedObjectReference>() {
+            @Override
+            public ManagedObjectReference call() {
+                return ClsApiHelper.getResourcePoolFromClusterName(client, clusterName);
+            }
+        }, callback);
+    }
+
+    /**
+     * Runs an operation on the executor.
+     *
+     * @param operation the operation.
+     * @param callback callback notified when the operation is done, may be {@code null}.
+     * @return future result of the operation.
+     */
+    public <T> Future<T> submit(Callable<T> operation, Callback<T> callback) {
+        FutureTask<T> task = callback == null
+                ? new FutureTask<>(operation) : new CallbackTask<>(operation, callback);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Task notifying a callback once done.
+     */
+    private static class CallbackTask<T> extends FutureTask<T> {
+        private final Callback<T> callback;
+
+        CallbackTask(Callable<T> operation, Callback<T> callback) {
+            super(operation);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            T result;
+            try {
+                result = get();
+            } catch (CancellationException e) {
+                callback.failed(e);
+                return;
+            } catch (ExecutionException e) {
+                callback.failed(e.getCause());
+                return;
+            } catch (InterruptedException e) {
+                // cannot happen, the task is done
+                Thread.currentThread().interrupt();
+                return;
+            }
+            callback.succeeded(result);
+        }
+    }
+}
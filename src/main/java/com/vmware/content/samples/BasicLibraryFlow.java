@@ -88,12 +88,12 @@ public class BasicLibraryFlow extends AbstractSample {
         IOUtil.print("Downloaded item files to " + downloadsDirectory);
 
         // cleanup
-        client.localLibrary().delete(libraryId);
+        ClsApiHelper.deleteLocalLibrary(client, libraryId);
     }
 
     private void updateLibraryName(String libraryId, String updatedName) {
         LibraryModel libraryModel = new LibraryModel();
         libraryModel.setName(updatedName);
-        client.localLibrary().update(libraryId, libraryModel);
+        ClsApiHelper.updateLocalLibrary(client, libraryId, libraryModel);
     }
 }
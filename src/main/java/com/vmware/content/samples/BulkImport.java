@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+
+import com.vmware.content.samples.client.util.IOUtil;
+
+/**
+ * This API sample demonstrates the unattended import of all the OVF, OVA
+ * and ISO files of a local directory tree into a content library, with the
+ * imports running concurrently; see {@link BulkImportPipeline}.
+ */
+public class BulkImport extends AbstractSample {
+
+    public static void main(String[] args) {
+        BulkImport sample = new BulkImport();
+        sample.run(args);
+    }
+
+    @Override
+    public void runSample(String[] args) throws Exception {
+        String libraryName = IOUtil.read("Enter the name of the library to import into: ");
+        String libraryId = ClsApiHelper.getLibraryByName(client, libraryName);
+        if (libraryId == null) {
+            IOUtil.print("Creating library " + libraryName);
+            String fileUri = IOUtil.read("Enter the library storage backing URI; " +
+                    "for example, file:///tmp: ");
+            libraryId = ClsApiHelper.createLocalLibraryOnFileBacking(client, libraryName, URI.create(fileUri));
+        }
+
+        String directory = IOUtil.read("Enter the directory of the files to import: ");
+        List<BulkImportPipeline.Artifact> artifacts = BulkImportPipeline.findArtifacts(new File(directory));
+        IOUtil.print("Importing " + artifacts.size() + " artifacts");
+
+        long start = System.nanoTime();
+        new BulkImportPipeline(client).importAll(libraryId, artifacts);
+        BulkImportPipeline.printReport(artifacts, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,638 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
+import com.vmware.content.library.item.TransferEndpoint;
+import com.vmware.content.library.item.UpdateSessionModel;
+import com.vmware.content.library.item.updatesession.FileTypes.AddSpec;
+import com.vmware.content.library.item.updatesession.FileTypes.Info;
+import com.vmware.content.library.item.updatesession.FileTypes.SourceType;
+import com.vmware.content.library.item.updatesession.FileTypes.ValidationResult;
+import com.vmware.content.samples.client.ClsApiClient;
+import com.vmware.content.samples.client.util.ChecksumReadAhead;
+import com.vmware.content.samples.client.util.ChecksumUtil;
+import com.vmware.content.samples.client.util.FileSliceEntity;
+import com.vmware.content.samples.client.util.HttpUtil;
+import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.content.samples.client.util.OvaIndex;
+import com.vmware.content.samples.client.util.OvfDescriptor;
+
+import org.apache.http.client.methods.HttpPut;
+
+/**
+ * Imports the OVF, OVA and ISO files found in a local directory tree into a
+ * library, one item per artifact.
+ * <p>
+ * The import of each artifact goes through the stages of {@link Stage}. Each
+ * stage runs on its own thread pool, so the stages of different artifacts
+ * overlap: items are created and sessions opened while other artifacts are
+ * being uploaded. The size of each pool bounds the concurrency of its stage.
+ * <p>
+ * The files of an artifact are uploaded a few at once, see
+ * {@link #setFileConcurrency(int)}; meanwhile the checksums of the next files
+ * are computed ahead, see {@link ChecksumReadAhead}.
+ */
+public class BulkImportPipeline {
+    private static final int MAX_VALIDATE_ROUNDS = 10;
+
+    private final ClsApiClient client;
+    private final Map<Stage, Integer> concurrency = new EnumMap<>(Stage.class);
+    private int fileConcurrency = 4;
+
+    /**
+     * Stages of the import of an artifact, in order.
+     */
+    public enum Stage {
+        CREATE_ITEM, OPEN_SESSION, UPLOAD, VALIDATE, COMPLETE, CLEAN_UP
+    }
+
+    /**
+     * Kind of artifact, which determines the item type and how it is uploaded.
+     */
+    public enum Kind {
+        OVF("ovf"), OVA("ovf"), ISO("iso");
+
+        private final String itemType;
+
+        Kind(String itemType) {
+            this.itemType = itemType;
+        }
+
+        public String getItemType() {
+            return itemType;
+        }
+    }
+
+    /**
+     * An artifact being imported, with the outcome of its import.
+     */
+    public static class Artifact {
+        private final File file;
+        private final Kind kind;
+        private final String itemName;
+        private final long[] stageNanos = new long[Stage.values().length];
+        private volatile String itemId;
+        private volatile String sessionId;
+        private final AtomicLong uploadedBytes = new AtomicLong();
+        private volatile Throwable failure;
+        private volatile Stage failedStage;
+        private volatile Throwable cleanUpFailure;
+        private volatile long startNanos;
+        private volatile long endNanos;
+
+        Artifact(File file, Kind kind, String itemName) {
+            this.file = file;
+            this.kind = kind;
+            this.itemName = itemName;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getItemName() {
+            return itemName;
+        }
+
+        public String getItemId() {
+            return itemId;
+        }
+
+        public long getUploadedBytes() {
+            return uploadedBytes.get();
+        }
+
+        /**
+         * @return the cause of the failure of the import, or {@code null} if it succeeded.
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        public Stage getFailedStage() {
+            return failedStage;
+        }
+
+        /**
+         * @return the cause of the failure to delete the session, or the item of a
+         *         failed import, or {@code null} if the clean up succeeded.
+         */
+        public Throwable getCleanUpFailure() {
+            return cleanUpFailure;
+        }
+
+        /**
+         * @return time spent running the given stage, in nanoseconds.
+         */
+        public synchronized long getStageNanos(Stage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        /**
+         * @return time from the start of the first stage to the end of the last one,
+         *         waits between stages included, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return endNanos - startNanos;
+        }
+
+        synchronized void setStageNanos(Stage stage, long nanos) {
+            stageNanos[stage.ordinal()] = nanos;
+        }
+    }
+
+    /**
+     * @param client authenticated ClsApiClient.
+     */
+    public BulkImportPipeline(ClsApiClient client) {
+        this.client = client;
+        for (Stage stage : Stage.values()) {
+            concurrency.put(stage, 8);
+        }
+        // the uploads share the bandwidth, a few at once saturate the link
+        concurrency.put(Stage.UPLOAD, 4);
+    }
+
+    /**
+     * Sets the maximum number of artifacts in a stage at once.
+     *
+     * @param stage stage of the import.
+     * @param maxConcurrent maximum number of artifacts in the stage.
+     */
+    public void setConcurrency(Stage stage, int maxConcurrent) {
+        concurrency.put(stage, maxConcurrent);
+    }
+
+    /**
+     * Sets the maximum number of files of an artifact uploaded at once.
+     *
+     * @param maxConcurrent maximum number of files uploaded at once per artifact.
+     */
+    public void setFileConcurrency(int maxConcurrent) {
+        fileConcurrency = maxConcurrent;
+    }
+
+    /**
+     * Finds the artifacts to import in a directory tree.
+     * Items are named after the path of the artifacts relative to the directory.
+     * The files referenced by an OVF descriptor, such as ISO images, are
+     * imported with it, not as artifacts of their own.
+     *
+     * @param directory root of the directory tree.
+     * @return the artifacts, in path order.
+     */
+    public static List<Artifact> findArtifacts(File directory) {
+        List<Artifact> artifacts = new ArrayList<>();
+        findArtifacts(directory, "", artifacts);
+
+        Set<File> referencedFiles = new HashSet<>();
+        for (Artifact artifact : artifacts) {
+            if (artifact.getKind() != Kind.OVF) {
+                continue;
+            }
+            try {
+                OvfDescriptor descriptor = OvfDescriptor.parse(artifact.getFile());
+                for (OvfDescriptor.FileReference reference : descriptor.getFiles()) {
+                    URI uri = OvfDescriptor.resolveHref(artifact.getFile(), reference.getHref());
+                    if ("file".equals(uri.getScheme())) {
+                        referencedFiles.add(new File(uri).getCanonicalFile());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // the import of the descriptor reports it
+            }
+        }
+        for (Iterator<Artifact> i = artifacts.iterator(); i.hasNext(); ) {
+            Artifact artifact = i.next();
+            try {
+                if (referencedFiles.contains(artifact.getFile().getCanonicalFile())) {
+                    i.remove();
+                }
+            } catch (IOException e) {
+                // kept, as it cannot be matched
+            }
+        }
+        return artifacts;
+    }
+
+    private static void findArtifacts(File directory, String prefix, List<Artifact> artifacts) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> sorted = new ArrayList<>();
+        Collections.addAll(sorted, files);
+        Collections.sort(sorted);
+        for (File file : sorted) {
+            if (file.isDirectory()) {
+                findArtifacts(file, prefix + file.getName() + "-", artifacts);
+                continue;
+            }
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot <= 0) {
+                continue;
+            }
+            Kind kind;
+            try {
+                kind = Kind.valueOf(name.substring(dot + 1).toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                // disks and manifests of OVF packages, other files
+                continue;
+            }
+            artifacts.add(new Artifact(file, kind, prefix + name.substring(0, dot)));
+        }
+    }
+
+    /**
+     * Imports artifacts into a library, returning once all of them are imported or failed.
+     * A failed import does not stop the others.
+     *
+     * @param libraryId identifier of the library.
+     * @param artifacts artifacts to import.
+     * @throws InterruptedException
+     */
+    public void importAll(final String libraryId, List<Artifact> artifacts) throws InterruptedException {
+        final Map<Stage, ExecutorService> executors = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            executors.put(stage, Executors.newFixedThreadPool(concurrency.get(stage)));
+        }
+        int fileSlots = concurrency.get(Stage.UPLOAD) * fileConcurrency;
+        // uploads the files of the artifacts in the upload stage
+        final ExecutorService fileExecutor = Executors.newFixedThreadPool(fileSlots);
+        // computes the checksum of the next file of each file upload
+        final ExecutorService checksumExecutor = Executors.newFixedThreadPool(fileSlots);
+        final CountDownLatch done = new CountDownLatch(artifacts.size());
+        try {
+            for (Artifact artifact : artifacts) {
+                artifact.startNanos = System.nanoTime();
+                submit(executors, fileExecutor, checksumExecutor, Stage.CREATE_ITEM, artifact,
+                        libraryId, done);
+            }
+            done.await();
+        } finally {
+            for (ExecutorService executor : executors.values()) {
+                executor.shutdownNow();
+            }
+            fileExecutor.shutdownNow();
+            checksumExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints the timings of each artifact, and the overall throughput.
+     *
+     * @param artifacts imported artifacts.
+     * @param elapsedNanos wall clock time of the whole import, in nanoseconds.
+     */
+    public static void printReport(List<Artifact> artifacts, long elapsedNanos) {
+        long totalBytes = 0;
+        int failed = 0;
+        for (Artifact artifact : artifacts) {
+            totalBytes += artifact.getUploadedBytes();
+            StringBuilder line = new StringBuilder(artifact.getItemName()).append(": ");
+            if (artifact.getFailure() != null) {
+                failed++;
+                line.append("FAILED in ").append(artifact.getFailedStage()).append(" (")
+                        .append(artifact.getFailure().getMessage()).append("), ");
+            }
+            line.append(artifact.getUploadedBytes()).append(" bytes in ")
+                    .append(artifact.getTotalNanos() / 1000000).append(" ms");
+            if (artifact.getCleanUpFailure() != null) {
+                line.append(", clean up failed (").append(artifact.getCleanUpFailure().getMessage())
+                        .append(')');
+            }
+            for (Stage stage : Stage.values()) {
+                line.append(", ").append(stage.name().toLowerCase(Locale.ENGLISH)).append(' ')
+                        .append(artifact.getStageNanos(stage) / 1000000).append(" ms");
+            }
+            IOUtil.print(line.toString());
+        }
+        double seconds = elapsedNanos / 1e9;
+        // nothing to import takes no time
+        double gigabytesPerSecond = elapsedNanos > 0 ? totalBytes / seconds / 1e9 : 0;
+        IOUtil.print(String.format(Locale.ENGLISH,
+                "Imported %d of %d artifacts, %d bytes in %.1f s (%.3f GB/s)",
+                artifacts.size() - failed, artifacts.size(), totalBytes, seconds,
+                gigabytesPerSecond));
+    }
+
+    private void submit(final Map<Stage, ExecutorService> executors, final ExecutorService fileExecutor,
+            final ExecutorService checksumExecutor, final Stage stage, final Artifact artifact,
+            final String libraryId, final CountDownLatch done) {
+        executors.get(stage).execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    runStage(stage, artifact, libraryId, fileExecutor, checksumExecutor);
+                } catch (Throwable e) {
+                    // errors too, or the artifact would never be counted done
+                    if (stage == Stage.CLEAN_UP) {
+                        // does not undo the import, if it succeeded
+                        artifact.cleanUpFailure = e;
+                    } else if (artifact.failure == null) {
+                        artifact.failure = e;
+                        artifact.failedStage = stage;
+                    }
+                }
+                artifact.setStageNanos(stage, System.nanoTime() - start);
+
+                Stage next;
+                if (stage == Stage.CLEAN_UP || artifact.itemId == null && artifact.failure != null) {
+                    next = null;
+                } else if (artifact.failure != null) {
+                    next = Stage.CLEAN_UP;
+                } else {
+                    next = Stage.values()[stage.ordinal() + 1];
+                }
+                if (next == null) {
+                    artifact.endNanos = System.nanoTime();
+                    done.countDown();
+                } else {
+                    submit(executors, fileExecutor, checksumExecutor, next, artifact, libraryId, done);
+                }
+            }
+        });
+    }
+
+    private void runStage(Stage stage, Artifact artifact, String libraryId,
+            ExecutorService fileExecutor, ExecutorService checksumExecutor) throws Exception {
+        switch (stage) {
+        case CREATE_ITEM:
+            artifact.itemId = ClsApiHelper.createItem(client, libraryId, artifact.getItemName(),
+                    artifact.getKind().getItemType());
+            break;
+        case OPEN_SESSION:
+            UpdateSessionModel updateSessionModel = new UpdateSessionModel();
+            updateSessionModel.setLibraryItemId(artifact.itemId);
+            artifact.sessionId = client.updateSession().create(ClsApiHelper.getRandomClientToken(),
+                    updateSessionModel);
+            break;
+        case UPLOAD:
+            upload(artifact, fileExecutor, checksumExecutor);
+            break;
+        case VALIDATE:
+            ValidationResult result = client.updateSessionFile().validate(artifact.sessionId);
+            if (result.getHasErrors() || !result.getMissingFiles().isEmpty()) {
+                throw new RuntimeException("Invalid upload " + result);
+            }
+            break;
+        case COMPLETE:
+            client.updateSession().complete(artifact.sessionId);
+            client.metadataCache().invalidateItem(artifact.itemId);
+            break;
+        case CLEAN_UP:
+            try {
+                if (artifact.sessionId != null) {
+                    if (artifact.failure != null) {
+                        // if anything went wrong, try to cancel the session
+                        try {
+                            client.updateSession().cancel(artifact.sessionId);
+                        } catch (RuntimeException e) {
+                            // deleted below anyway
+                        }
+                    }
+                    client.updateSession().delete(artifact.sessionId);
+                }
+            } finally {
+                if (artifact.failure != null) {
+                    // the item got no content, do not leave it behind
+                    ClsApiHelper.deleteItem(client, artifact.itemId);
+                }
+            }
+            break;
+        default:
+            throw new IllegalStateException("Unknown stage " + stage);
+        }
+    }
+
+    private void upload(Artifact artifact, ExecutorService fileExecutor,
+            ExecutorService checksumExecutor) throws Exception {
+        if (artifact.getKind() == Kind.OVA) {
+            uploadOva(artifact, fileExecutor, checksumExecutor);
+        } else if (artifact.getKind() == Kind.OVF) {
+            uploadOvf(artifact, fileExecutor, checksumExecutor);
+        } else {
+            uploadFile(artifact, artifact.getFile().getName(), artifact.getFile(), null);
+        }
+    }
+
+    private void uploadOva(final Artifact artifact, ExecutorService fileExecutor,
+            ExecutorService checksumExecutor) throws Exception {
+        OvaIndex ova = OvaIndex.scan(artifact.getFile());
+        try (final FileChannel channel = new RandomAccessFile(artifact.getFile(), "r").getChannel()) {
+            List<OvaIndex.Entry> entries = ova.getEntries();
+            List<Callable<ChecksumInfo>> checksums = new ArrayList<>(entries.size());
+            for (OvaIndex.Entry entry : entries) {
+                checksums.add(ChecksumUtil.checksumTask(channel, entry.getOffset(), entry.getSize(),
+                        ChecksumUtil.DEFAULT_ALGORITHM));
+            }
+            final ChecksumReadAhead readAhead =
+                    new ChecksumReadAhead(checksumExecutor, checksums, fileConcurrency);
+            List<Callable<Void>> uploads = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                final int index = i;
+                final OvaIndex.Entry entry = entries.get(i);
+                uploads.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        UploadChecksum checksum = new UploadChecksum(readAhead.startUpload(index));
+                        URI uploadUri = addFile(artifact.sessionId, entry.getName(), entry.getSize(),
+                                checksum.getChecksumInfo());
+                        HttpPut request = new HttpPut(uploadUri);
+                        request.setEntity(new FileSliceEntity(channel, entry.getOffset(),
+                                entry.getSize(), checksum.getDigest()));
+                        HttpUtil.executeAndConsume(request);
+                        checksum.verify(client, artifact.sessionId, entry.getName());
+                        artifact.uploadedBytes.addAndGet(entry.getSize());
+                        return null;
+                    }
+                });
+            }
+            try {
+                uploadConcurrently(uploads, fileExecutor);
+            } finally {
+                readAhead.cancel();
+            }
+        }
+    }
+
+    private void uploadOvf(Artifact artifact, ExecutorService fileExecutor,
+            ExecutorService checksumExecutor) throws Exception {
+        File ovfFile = artifact.getFile();
+        uploadFile(artifact, ovfFile.getName(), ovfFile, null);
+        List<String> hrefs = new ArrayList<>();
+        for (OvfDescriptor.FileReference reference : OvfDescriptor.parse(ovfFile).getFiles()) {
+            hrefs.add(reference.getHref());
+        }
+        uploadReferences(artifact, hrefs, fileExecutor, checksumExecutor);
+        // the server reports the files still missing, if any
+        for (int round = 0; round < MAX_VALIDATE_ROUNDS; round++) {
+            ValidationResult result = client.updateSessionFile().validate(artifact.sessionId);
+            if (result.getMissingFiles().isEmpty()) {
+                return;
+            }
+            uploadReferences(artifact, new ArrayList<>(result.getMissingFiles()), fileExecutor,
+                    checksumExecutor);
+        }
+        throw new RuntimeException("Files still missing after " + MAX_VALIDATE_ROUNDS
+                + " validations of " + ovfFile.getPath());
+    }
+
+    /**
+     * Uploads the files referenced by the descriptor of an OVF artifact; the
+     * files referenced by a URL other than a file URL are pulled by the server.
+     */
+    private void uploadReferences(final Artifact artifact, List<String> hrefs,
+            ExecutorService fileExecutor, ExecutorService checksumExecutor) throws Exception {
+        List<URI> uris = new ArrayList<>(hrefs.size());
+        for (String href : hrefs) {
+            uris.add(OvfDescriptor.resolveHref(artifact.getFile(), href));
+        }
+        List<Callable<ChecksumInfo>> checksums = new ArrayList<>(uris.size());
+        for (URI uri : uris) {
+            checksums.add("file".equals(uri.getScheme())
+                    ? ChecksumUtil.checksumTask(new File(uri), ChecksumUtil.DEFAULT_ALGORITHM) : null);
+        }
+        final ChecksumReadAhead readAhead =
+                new ChecksumReadAhead(checksumExecutor, checksums, fileConcurrency);
+        List<Callable<Void>> uploads = new ArrayList<>(hrefs.size());
+        for (int i = 0; i < hrefs.size(); i++) {
+            final int index = i;
+            final String href = hrefs.get(i);
+            final URI uri = uris.get(i);
+            uploads.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    ChecksumInfo checksumInfo = readAhead.startUpload(index);
+                    if ("file".equals(uri.getScheme())) {
+                        uploadFile(artifact, href, new File(uri), checksumInfo);
+                    } else {
+                        pullFile(artifact, href, uri);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            uploadConcurrently(uploads, fileExecutor);
+        } finally {
+            readAhead.cancel();
+        }
+    }
+
+    /**
+     * Runs the uploads of the files of an artifact and waits for them. Once one
+     * fails, the uploads not started are cancelled, and the running ones are
+     * waited for, so that the session is not cleaned up under them.
+     */
+    private static void uploadConcurrently(List<Callable<Void>> uploads, ExecutorService fileExecutor)
+            throws Exception {
+        List<Future<Void>> futures = new ArrayList<>(uploads.size());
+        for (Callable<Void> upload : uploads) {
+            futures.add(fileExecutor.submit(upload));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<Void> future : futures) {
+                future.cancel(false);
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (CancellationException | ExecutionException other) {
+                    // the first failure is reported
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads a file, digested while it is sent unless its checksum was computed ahead.
+     *
+     * @param checksumInfo checksum computed ahead, may be {@code null}.
+     */
+    private void uploadFile(Artifact artifact, String name, File localFile,
+            ChecksumInfo checksumInfo) throws Exception {
+        UploadChecksum checksum = new UploadChecksum(checksumInfo);
+        URI uploadUri = addFile(artifact.sessionId, name, localFile.length(), checksum.getChecksumInfo());
+        HttpUtil.uploadFileToUri(localFile, uploadUri, checksum.getDigest());
+        checksum.verify(client, artifact.sessionId, name);
+        artifact.uploadedBytes.addAndGet(localFile.length());
+    }
+
+    private void pullFile(Artifact artifact, String name, URI sourceUri) throws IOException {
+        String scheme = sourceUri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            throw new IOException("Unsupported file reference " + sourceUri);
+        }
+        AddSpec fileSpec = new AddSpec();
+        fileSpec.setName(name);
+        fileSpec.setSourceType(SourceType.PULL);
+        TransferEndpoint endpoint = new TransferEndpoint();
+        endpoint.setUri(sourceUri);
+        fileSpec.setSourceEndpoint(endpoint);
+        client.updateSessionFile().add(artifact.sessionId, fileSpec);
+    }
+
+    private URI addFile(String sessionId, String name, long size, ChecksumInfo checksumInfo) {
+        AddSpec fileSpec = new AddSpec();
+        fileSpec.setName(name);
+        fileSpec.setSourceType(SourceType.PUSH);
+        fileSpec.setSize(size);
+        fileSpec.setChecksumInfo(checksumInfo);
+        Info fileInfo = client.updateSessionFile().add(sessionId, fileSpec);
+        return fileInfo.getUploadEndpoint().getUri();
+    }
+}
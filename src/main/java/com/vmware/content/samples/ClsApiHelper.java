@@ -19,34 +19,81 @@ import java.io.IOException;
 import java.net.URI;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.vmware.content.Library;
 import com.vmware.content.LibraryModel;
-import com.vmware.content.LibraryTypes;
-import com.vmware.content.library.Item;
 import com.vmware.content.library.ItemModel;
 import com.vmware.content.library.StorageBacking;
 import com.vmware.content.library.item.DownloadSessionModel;
 import com.vmware.content.library.item.TransferEndpoint;
 import com.vmware.content.library.item.UpdateSessionModel;
 import com.vmware.content.samples.client.ClsApiClient;
+import com.vmware.content.samples.client.InventoryFetcher;
+import com.vmware.content.samples.client.PreparePoller;
+import com.vmware.content.samples.client.util.ChecksumUtil;
 import com.vmware.content.samples.client.util.HttpUtil;
 import com.vmware.content.samples.client.util.IOUtil;
-import com.vmware.content.samples.client.util.VimServiceManager;
-import com.vmware.vcloud.suite.samples.common.ServiceManager;
-import com.vmware.vcloud.suite.samples.vim.helpers.VimUtil;
-import com.vmware.vim25.DynamicProperty;
+import com.vmware.vapi.std.errors.ResourceBusy;
+import com.vmware.vapi.std.errors.ServiceUnavailable;
+import com.vmware.vapi.std.errors.TimedOut;
 import com.vmware.vim25.ManagedObjectReference;
 
 /**
  * Helper class to perform commonly used operations using Content Library API.
  */
 public class ClsApiHelper {
+    private static final int SEGMENTS_PER_DOWNLOAD = 4;
+    private static final int INVENTORY_FETCH_PARALLELISM = 8;
+    private static final int CREATE_ITEM_ATTEMPTS = 3;
+    private static final long CREATE_ITEM_RETRY_DELAY_MILLIS = 500;
+
+    /**
+     * Outcome of the creation of one item by
+     * {@link #createItems(ClsApiClient, String, List, int)}.
+     */
+    public static class CreateItemResult {
+        private final ItemModel spec;
+        private final String itemId;
+        private final Throwable failure;
+
+        CreateItemResult(ItemModel spec, String itemId, Throwable failure) {
+            this.spec = spec;
+            this.itemId = itemId;
+            this.failure = failure;
+        }
+
+        public ItemModel getSpec() {
+            return spec;
+        }
+
+        /**
+         * @return identifier of the created item, or {@code null} if the creation failed.
+         */
+        public String getItemId() {
+            return itemId;
+        }
+
+        /**
+         * @return the cause of the failure, or {@code null} if the item was created.
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
 
     private ClsApiHelper() {
     }
@@ -75,7 +122,85 @@ public class ClsApiHelper {
         item.setName(itemName);
         item.setLibraryId(libraryId);
         item.setType(type);
-        return client.item().create(getRandomClientToken(), item);
+        String itemId = client.item().create(getRandomClientToken(), item);
+        client.metadataCache().invalidateItem(itemId);
+        return itemId;
+    }
+
+    /**
+     * Creates items in the given library, running up to {@code parallelism}
+     * creations concurrently.
+     * <p>
+     * Each spec gets its own client token, which is kept when the creation
+     * is retried after a transient failure, so that the server creates the
+     * item only once. A failed creation does not stop the others. The specs
+     * are copied into the library, and are not modified.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param libraryId identifier of a library where
+     *                  the new items need to be created.
+     * @param specs items to be created, with at least a name and a type.
+     * @param parallelism maximum number of concurrent creations.
+     * @return the outcome of each creation, in the order of the specs.
+     * @throws InterruptedException
+     */
+    public static List<CreateItemResult> createItems(final ClsApiClient client, String libraryId,
+            List<ItemModel> specs, int parallelism) throws InterruptedException {
+        ExecutorService createExecutor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<String>> creates = new ArrayList<>(specs.size());
+            for (ItemModel spec : specs) {
+                final ItemModel createSpec = newCreateSpec(spec, libraryId);
+                final String clientToken = getRandomClientToken();
+                creates.add(createExecutor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws InterruptedException {
+                        return createItemWithRetries(client, clientToken, createSpec);
+                    }
+                }));
+            }
+            List<CreateItemResult> results = new ArrayList<>(specs.size());
+            for (int i = 0; i < specs.size(); i++) {
+                try {
+                    results.add(new CreateItemResult(specs.get(i), creates.get(i).get(), null));
+                } catch (ExecutionException e) {
+                    results.add(new CreateItemResult(specs.get(i), null, e.getCause()));
+                }
+            }
+            return results;
+        } finally {
+            createExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Copies the fields an item is created from into a spec for the given library.
+     */
+    private static ItemModel newCreateSpec(ItemModel spec, String libraryId) {
+        ItemModel createSpec = new ItemModel();
+        createSpec.setLibraryId(libraryId);
+        createSpec.setName(spec.getName());
+        createSpec.setDescription(spec.getDescription());
+        createSpec.setType(spec.getType());
+        return createSpec;
+    }
+
+    private static String createItemWithRetries(ClsApiClient client, String clientToken, ItemModel spec)
+            throws InterruptedException {
+        long retryDelay = CREATE_ITEM_RETRY_DELAY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String itemId = client.item().create(clientToken, spec);
+                client.metadataCache().invalidateItem(itemId);
+                return itemId;
+            } catch (ServiceUnavailable | TimedOut | ResourceBusy e) {
+                if (attempt == CREATE_ITEM_ATTEMPTS) {
+                    throw e;
+                }
+                Thread.sleep(retryDelay);
+                retryDelay *= 2;
+            }
+        }
     }
 
     /**
@@ -100,7 +225,53 @@ public class ClsApiHelper {
         libraryModel.setStorageBackings(Collections
                 .singletonList(libraryBacking));
 
-        return client.localLibrary().create(getRandomClientToken(), libraryModel);
+        String libraryId = client.localLibrary().create(getRandomClientToken(), libraryModel);
+        client.metadataCache().invalidateLibrary(libraryId);
+        return libraryId;
+    }
+
+    /**
+     * Updates a local library.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param libraryId identifier of the library to update.
+     * @param libraryModel fields of the library to update.
+     */
+    public static void updateLocalLibrary(ClsApiClient client, String libraryId, LibraryModel libraryModel) {
+        try {
+            client.localLibrary().update(libraryId, libraryModel);
+        } finally {
+            client.metadataCache().invalidateLibrary(libraryId);
+        }
+    }
+
+    /**
+     * Deletes a local library, along with its items.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param libraryId identifier of the library to delete.
+     */
+    public static void deleteLocalLibrary(ClsApiClient client, String libraryId) {
+        try {
+            client.localLibrary().delete(libraryId);
+        } finally {
+            // the items of the library are gone as well
+            client.metadataCache().invalidateAll();
+        }
+    }
+
+    /**
+     * Deletes an item.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param itemId identifier of the item to delete.
+     */
+    public static void deleteItem(ClsApiClient client, String itemId) {
+        try {
+            client.item().delete(itemId);
+        } finally {
+            client.metadataCache().invalidateItem(itemId);
+        }
     }
 
     /**
@@ -111,18 +282,11 @@ public class ClsApiHelper {
      * @return identifier of the first library matching the given name.
      */
     public static String getLibraryByName(ClsApiClient client, String libraryName) {
-        LibraryTypes.FindSpec findSpec = new LibraryTypes.FindSpec();
-        findSpec.setName(libraryName);
-        List<String> result = client.library().find(findSpec);
-        if (result.size() >= 1) {
-            return result.get(0);
-        } else {
-            return null;
-        }
+        return client.metadataCache().findLibraryByName(libraryName);
     }
 
     /**
-     * Downloads files from a given item in a given folder.
+     * Downloads files from a given item in a given folder, one file at a time.
      *
      * @param client authenticated ClsApiClient.
      * @param libraryItemId identifier of the item to be downloaded.
@@ -138,26 +302,119 @@ public class ClsApiHelper {
     public static void downloadFilesFromItem(ClsApiClient client,
             String libraryItemId, String folderToDownloadFiles) throws InterruptedException,
             NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        downloadFilesFromItem(client, libraryItemId, folderToDownloadFiles, 1);
+    }
+
+    /**
+     * Downloads files from a given item in a given folder, using up to
+     * {@code parallelism} concurrent transfers.
+     * <p>
+     * All files of the item are prepared up front, and each file starts
+     * downloading as soon as it is prepared, while the others are still
+     * being prepared. The download session is deleted once done.
+     * <p>
+     * Downloads are resumable: if this method fails, calling it again for
+     * the same content fetches only the parts of the files still missing.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param libraryItemId identifier of the item to be downloaded.
+     * @param folderToDownloadFiles path to a directory on the local storage
+     *                              to store the downloaded files from
+     *                              the given item.
+     * @param parallelism maximum number of files to download concurrently.
+     * @throws InterruptedException
+     * @throws NoSuchAlgorithmException
+     * @throws KeyStoreException
+     * @throws KeyManagementException
+     * @throws IOException
+     */
+    public static void downloadFilesFromItem(final ClsApiClient client,
+            String libraryItemId, final String folderToDownloadFiles, int parallelism)
+            throws InterruptedException, NoSuchAlgorithmException, KeyStoreException,
+            KeyManagementException, IOException {
+        // partially downloaded files can be resumed only for the same content
+        final String contentVersion = client.item().get(libraryItemId).getContentVersion();
+
         // create a download session to download files from item
         DownloadSessionModel downloadSessionModel = new DownloadSessionModel();
         downloadSessionModel.setLibraryItemId(libraryItemId);
-        String downloadSessionId = client.downloadSession().create(getRandomClientToken(), downloadSessionModel);
-
-        for (com.vmware.content.library.item.downloadsession.FileTypes.Info downloadInfo : client
-                .downloadSessionFile().list(downloadSessionId)) {
-            // prepare the file for download
-            client.downloadSessionFile().prepare(downloadSessionId, downloadInfo.getName(),
-                    com.vmware.content.library.item.downloadsession.FileTypes.EndpointType.HTTPS);
-            do {
-                Thread.sleep(1000);
-            } while (client.downloadSessionFile()
-                    .get(downloadSessionId, downloadInfo.getName())
-                    .getStatus() != com.vmware.content.library.item.downloadsession.FileTypes.PrepareStatus.PREPARED);
-
-            com.vmware.content.library.item.downloadsession.FileTypes.Info fileInfo =
-                    client.downloadSessionFile().get(downloadSessionId, downloadInfo.getName());
-            URI uri = fileInfo.getDownloadEndpoint().getUri();
-            HttpUtil.downloadFileFromUri(uri, folderToDownloadFiles, downloadInfo.getName());
+        final String downloadSessionId =
+                client.downloadSession().create(getRandomClientToken(), downloadSessionModel);
+
+        final ExecutorService downloadExecutor = Executors.newFixedThreadPool(parallelism);
+        PreparePoller preparePoller = client.preparePoller();
+        List<Future<com.vmware.content.library.item.downloadsession.FileTypes.Info>> prepares =
+                new ArrayList<>();
+        try {
+            // request all the files to be prepared at once, and start downloading
+            // each file as soon as it is prepared
+            final List<Future<Void>> downloads = Collections.synchronizedList(new ArrayList<Future<Void>>());
+            for (com.vmware.content.library.item.downloadsession.FileTypes.Info downloadInfo : client
+                    .downloadSessionFile().list(downloadSessionId)) {
+                client.downloadSessionFile().prepare(downloadSessionId, downloadInfo.getName(),
+                        com.vmware.content.library.item.downloadsession.FileTypes.EndpointType.HTTPS);
+                prepares.add(preparePoller.watch(downloadSessionId, downloadInfo.getName(),
+                        new PreparePoller.Listener() {
+                            @Override
+                            public void prepared(String sessionId,
+                                    final com.vmware.content.library.item.downloadsession.FileTypes.Info fileInfo) {
+                                downloads.add(downloadExecutor.submit(new Callable<Void>() {
+                                    @Override
+                                    public Void call() throws Exception {
+                                        HttpUtil.resumableDownloadFileFromUri(
+                                                fileInfo.getDownloadEndpoint().getUri(),
+                                                folderToDownloadFiles, fileInfo.getName(),
+                                                contentVersion, SEGMENTS_PER_DOWNLOAD);
+                                        return null;
+                                    }
+                                }));
+                            }
+
+                            @Override
+                            public void failed(String sessionId, String fileName, Exception e) {
+                                // the failure itself is rethrown once the earlier files are done
+                                IOUtil.print("Cannot prepare file " + fileName + ": " + e.getMessage());
+                            }
+                        }));
+            }
+
+            // listeners have run once the prepares are done
+            awaitAll(prepares);
+            awaitAll(new ArrayList<>(downloads));
+        } finally {
+            // the shared poller stops watching the files of this session
+            for (Future<?> prepare : prepares) {
+                prepare.cancel(false);
+            }
+            downloadExecutor.shutdownNow();
+            client.downloadSession().delete(downloadSessionId);
+        }
+    }
+
+    /**
+     * Waits for all the given tasks to finish, rethrowing the failure of
+     * the first task which failed.
+     */
+    private static void awaitAll(List<? extends Future<?>> tasks) throws InterruptedException,
+            NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof NoSuchAlgorithmException) {
+                    throw (NoSuchAlgorithmException) cause;
+                } else if (cause instanceof KeyStoreException) {
+                    throw (KeyStoreException) cause;
+                } else if (cause instanceof KeyManagementException) {
+                    throw (KeyManagementException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
         }
     }
 
@@ -188,6 +445,7 @@ public class ClsApiHelper {
         file.setSourceEndpoint(endpoint);
         client.updateSessionFile().add(sessionId, file);
         client.updateSession().complete(sessionId);
+        client.metadataCache().invalidateItem(itemId);
         return sessionId;
     }
 
@@ -206,69 +464,153 @@ public class ClsApiHelper {
     public static void uploadSingleFileFromLocalStorageToItem(ClsApiClient client,
             String itemId, String filePath, String fileName) throws NoSuchAlgorithmException,
             KeyStoreException, KeyManagementException, IOException {
+        File localFile = new File(filePath);
+
         // create an update session
         UpdateSessionModel updateSessionModel = new UpdateSessionModel();
         updateSessionModel.setLibraryItemId(itemId);
         String sessionId =
                 client.updateSession().create(getRandomClientToken(), updateSessionModel);
+        try {
+            // build the spec to upload the given file; the checksum is computed
+            // while the bits are pushed, as computing it first would read the file twice
+            com.vmware.content.library.item.updatesession.FileTypes.AddSpec
+                    file = new com.vmware.content.library.item.updatesession.FileTypes.AddSpec();
+            file.setName(fileName);
+            file.setSourceType(com.vmware.content.library.item.updatesession.FileTypes.SourceType.PUSH);
+            file.setSize(localFile.length());
 
-        // build the spec to upload the given file
-        com.vmware.content.library.item.updatesession.FileTypes.AddSpec
-                file = new com.vmware.content.library.item.updatesession.FileTypes.AddSpec();
-        file.setName(fileName);
-        file.setSourceType(com.vmware.content.library.item.updatesession.FileTypes.SourceType.PUSH);
+            com.vmware.content.library.item.updatesession.FileTypes.Info
+                    fileInfo = client.updateSessionFile().add(sessionId, file);
+            URI uploadUri = fileInfo.getUploadEndpoint().getUri();
 
-        com.vmware.content.library.item.updatesession.FileTypes.Info
-                fileInfo = client.updateSessionFile().add(sessionId, file);
-        URI uploadUri = fileInfo.getUploadEndpoint().getUri();
+            // push the bits
+            MessageDigest digest = ChecksumUtil.newMessageDigest(ChecksumUtil.DEFAULT_ALGORITHM);
+            HttpUtil.uploadFileToUri(localFile, uploadUri, digest);
+            verifyUploadedFile(client, sessionId, fileName,
+                    ChecksumUtil.toChecksumInfo(digest, ChecksumUtil.DEFAULT_ALGORITHM));
 
-        // push the bits
-        HttpUtil.uploadFileToUri(new File(filePath), uploadUri);
+            // complete the session
+            client.updateSession().complete(sessionId);
+            client.metadataCache().invalidateItem(itemId);
+        } catch (Exception e) {
+            // if anything goes wrong, try to cancel the session
+            client.updateSession().cancel(sessionId);
+            throw e;
+        }
+    }
 
-        // complete the session
-        client.updateSession().complete(sessionId);
+    /**
+     * Checks that a file pushed to an update session was received intact, by
+     * comparing the checksum computed by the server with the one of the bytes sent.
+     * To be called before the session is completed.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param sessionId identifier of the update session.
+     * @param fileName name of the file in the update session.
+     * @param sent checksum of the bytes sent.
+     * @throws IOException if the checksums differ.
+     */
+    public static void verifyUploadedFile(ClsApiClient client, String sessionId, String fileName,
+            com.vmware.content.library.item.FileTypes.ChecksumInfo sent) throws IOException {
+        ChecksumUtil.verify(fileName, sent,
+                client.updateSessionFile().get(sessionId, fileName).getChecksumInfo());
     }
 
     /**
-     * Gets resource pool from cluster name.
+     * Brings the files of an item in sync with files on the local storage,
+     * uploading only the files which are new or whose content changed.
+     * <p>
+     * A local file is considered unchanged when the item has a file of the
+     * same name, size and checksum. Files of the item which have no local
+     * counterpart are left untouched.
      *
      * @param client authenticated ClsApiClient.
-     * @param clusterName name of the cluster to find
-     *                    the {@link com.vmware.vim25.ManagedObjectReference} for.
-     * @return {@link com.vmware.vim25.ManagedObjectReference} for the given cluster name.
+     * @param itemId identifier of the item to sync.
+     * @param localFiles local storage files, uploaded under their own names.
+     * @return names of the files which were uploaded.
+     * @throws NoSuchAlgorithmException
+     * @throws KeyStoreException
+     * @throws KeyManagementException
+     * @throws IOException
      */
-    public static ManagedObjectReference getResourcePoolFromClusterName(ClsApiClient client, String clusterName) {
-        ServiceManager serviceManager;
-        try {
-            serviceManager = VimServiceManager.getServiceManager(client.getPlatformServiceController(),
-                    client.getManagementNodeId());
-        } catch (Exception e) {
-            throw new RuntimeException("Cannot connect to VMware APIs of " +
-                    "the vCenter Server instance", e);
+    public static List<String> syncFilesToItem(ClsApiClient client, String itemId, List<File> localFiles)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        Map<String, com.vmware.content.library.item.FileTypes.Info> itemFiles = new HashMap<>();
+        for (com.vmware.content.library.item.FileTypes.Info itemFile : client.itemFile().list(itemId)) {
+            itemFiles.put(itemFile.getName(), itemFile);
         }
 
-        ManagedObjectReference clusterMoRef;
-        try {
-            clusterMoRef =
-                    VimUtil.getCluster(serviceManager.getVimPortType(),
-                            serviceManager.getServiceContent(), clusterName);
-            assert clusterMoRef != null;
-        } catch (Exception e) {
-            throw new RuntimeException("Cannot get managed object ID for the given cluster", e);
+        // find the files to upload, keeping the checksums computed to compare
+        // files of the same size
+        Map<File, com.vmware.content.library.item.FileTypes.ChecksumInfo> changedFiles = new LinkedHashMap<>();
+        for (File localFile : localFiles) {
+            com.vmware.content.library.item.FileTypes.Info itemFile = itemFiles.get(localFile.getName());
+            com.vmware.content.library.item.FileTypes.ChecksumInfo itemChecksum =
+                    itemFile != null ? itemFile.getChecksumInfo() : null;
+            if (itemChecksum != null && itemFile.getSize() != null
+                    && itemFile.getSize() == localFile.length()) {
+                com.vmware.content.library.item.FileTypes.ChecksumInfo localChecksum =
+                        ChecksumUtil.checksum(localFile, itemChecksum.getAlgorithm());
+                if (localChecksum.getChecksum().equalsIgnoreCase(itemChecksum.getChecksum())) {
+                    IOUtil.print("Unchanged: " + localFile.getName());
+                    continue;
+                }
+                changedFiles.put(localFile, localChecksum);
+            } else {
+                changedFiles.put(localFile, null);
+            }
+        }
+        if (changedFiles.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        List<DynamicProperty> dynamicProps;
+        UpdateSessionModel updateSessionModel = new UpdateSessionModel();
+        updateSessionModel.setLibraryItemId(itemId);
+        String sessionId =
+                client.updateSession().create(getRandomClientToken(), updateSessionModel);
+        List<String> uploadedFiles = new ArrayList<>();
         try {
-            // find the cluster's root resource pool
-            dynamicProps =
-                    VimUtil.getProperties(serviceManager.getVimPortType(),
-                            serviceManager.getServiceContent(), clusterMoRef, clusterMoRef.getType(),
-                            Arrays.asList("resourcePool"));
-            assert dynamicProps != null && dynamicProps.size() > 0;
+            for (Map.Entry<File, com.vmware.content.library.item.FileTypes.ChecksumInfo> changedFile
+                    : changedFiles.entrySet()) {
+                File localFile = changedFile.getKey();
+                // new and resized files were not read yet, they are digested while sent
+                UploadChecksum checksum = new UploadChecksum(changedFile.getValue());
+                com.vmware.content.library.item.updatesession.FileTypes.AddSpec
+                        file = new com.vmware.content.library.item.updatesession.FileTypes.AddSpec();
+                file.setName(localFile.getName());
+                file.setSourceType(com.vmware.content.library.item.updatesession.FileTypes.SourceType.PUSH);
+                file.setSize(localFile.length());
+                file.setChecksumInfo(checksum.getChecksumInfo());
+                URI uploadUri = client.updateSessionFile().add(sessionId, file).getUploadEndpoint().getUri();
+
+                IOUtil.print("Uploading: " + localFile.getName());
+                HttpUtil.uploadFileToUri(localFile, uploadUri, checksum.getDigest());
+                checksum.verify(client, sessionId, localFile.getName());
+                uploadedFiles.add(localFile.getName());
+            }
+            client.updateSession().complete(sessionId);
+            client.metadataCache().invalidateItem(itemId);
         } catch (Exception e) {
-            throw new RuntimeException("Cannot find root resource pool for the given cluster", e);
+            // if anything goes wrong, try to cancel the session
+            client.updateSession().cancel(sessionId);
+            throw e;
+        } finally {
+            client.updateSession().delete(sessionId);
         }
-        return (ManagedObjectReference) dynamicProps.get(0).getVal();
+        return uploadedFiles;
+    }
+
+    /**
+     * Gets resource pool from cluster name.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param clusterName name of the cluster to find
+     *                    the {@link com.vmware.vim25.ManagedObjectReference} for.
+     * @return {@link com.vmware.vim25.ManagedObjectReference} for the given cluster name.
+     */
+    public static ManagedObjectReference getResourcePoolFromClusterName(ClsApiClient client, String clusterName) {
+        return client.vimConnection().getRootResourcePool(clusterName);
     }
 
     /**
@@ -295,16 +637,20 @@ public class ClsApiHelper {
      * @param client authenticated ClsApiClient.
      */
     public static void printAllLibraryItems(ClsApiClient client) {
-        Library library = client.library();
         IOUtil.print("\nList of items in all content libraries:");
-        // get all content libraries
-        List<String> libraryIds = library.list();
-        for (String libraryId : libraryIds) {
-            LibraryModel libraryModel = library.get(libraryId);
-            IOUtil.print(libraryModel.getName() + " (Id: " + libraryId + ")");
-            // list all items in each content library
-            printItemsFromLibrary(client, libraryId);
-            IOUtil.print("");
+        InventoryFetcher fetcher = new InventoryFetcher(client, INVENTORY_FETCH_PARALLELISM);
+        try {
+            // get all content libraries, with the items in each content library
+            fetcher.fetchAll(new InventoryFetcher.Listener() {
+                @Override
+                public void libraryFetched(LibraryModel libraryModel, List<ItemModel> items) {
+                    IOUtil.print(libraryModel.getName() + " (Id: " + libraryModel.getId() + ")");
+                    printItems(items);
+                    IOUtil.print("");
+                }
+            });
+        } finally {
+            fetcher.shutdown();
         }
     }
 
@@ -315,13 +661,19 @@ public class ClsApiHelper {
      * @param libraryId identifier of a library to print items from.
      */
     public static void printItemsFromLibrary(ClsApiClient client, String libraryId) {
-        Item item = client.item();
-        List<String> itemIds = item.list(libraryId);
-        for (String itemId : itemIds) {
-            ItemModel itemModel = item.get(itemId);
+        InventoryFetcher fetcher = new InventoryFetcher(client, INVENTORY_FETCH_PARALLELISM);
+        try {
+            printItems(fetcher.fetchItems(libraryId));
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+
+    private static void printItems(List<ItemModel> items) {
+        for (ItemModel itemModel : items) {
             IOUtil.print(itemModel.getName()
                     + " - Id: " + itemModel.getId()
                     + " (type=" + itemModel.getType() + ")");
         }
     }
-}
+}
\ No newline at end of file
@@ -14,6 +14,7 @@
  ******************************************************************************/
 package com.vmware.content.samples;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
@@ -30,12 +31,16 @@ import com.vmware.vcenter.ovf.OvfParams;
 import com.vmware.vim25.ManagedObjectReference;
 
 /**
- * This API sample demonstrates deployment of an OVF item to a given resource pool.
+ * This API sample demonstrates deployment of an OVF item to a given resource pool,
+ * as one virtual machine or as a batch of virtual machines deployed concurrently.
  * <p>
  * This sample assumes that connected vCenter Server instance already has
  * at least one OVF item in the available content libraries.
  */
 public class DeployOvf extends AbstractSample {
+    private static final int PARALLEL_DEPLOYMENTS = 8;
+
+    private OvfBatchDeployer deployer;
 
     public static void main(String[] args) {
         DeployOvf sample = new DeployOvf();
@@ -44,6 +49,8 @@ public class DeployOvf extends AbstractSample {
 
     @Override
     public void runSample(String[] args) throws Exception {
+        deployer = new OvfBatchDeployer(client, PARALLEL_DEPLOYMENTS);
+
         // display existing items
         ClsApiHelper.printAllLibraryItems(client);
         String itemId = IOUtil.read("Enter item ID of an OVF to deploy: ");
@@ -58,25 +65,42 @@ public class DeployOvf extends AbstractSample {
         // filter additional parameters for deployment against the deployment target
         Map<String, String> networkMap = displayOvfParamsAndGetNetworkSettings(itemId, target);
 
-        // create a resource pool deployment spec
+        // shared by all the VMs of a batch
+        String datastoreId =
+                IOUtil.read("Enter datastore ID (press enter for default): ");
+        String count = IOUtil.read("Enter the number of VMs to deploy (press enter for 1): ");
+        int vmCount = count.isEmpty() ? 1 : Integer.parseInt(count);
+
         String entityName = "Sample OVF VM" + System.currentTimeMillis() / 1000;
-        ResourcePoolDeploymentSpec spec = createResourcePoolDeploymentSpec(entityName, true, networkMap);
-
-        // deploy the OVF library item with the spec, on the target
-        DeploymentResult result =
-                client.ovfLibraryItem().deploy(null, itemId, target, spec);
-
-        // display result of the operation
-        String messageOnSuccess = "OVF item deployment succeeded." +
-                "\nDeployment information:" + " " + result.getResourceId().getType()
-                + " " + result.getResourceId().getId();
-        String messageOnFailure = "OVF item deployment failed.";
-        OvfUtil.displayOperationResult(result.getSucceeded(),
-                result.getError(), messageOnSuccess, messageOnFailure);
+        if (vmCount == 1) {
+            // create a resource pool deployment spec
+            ResourcePoolDeploymentSpec spec =
+                    createResourcePoolDeploymentSpec(entityName, true, networkMap, datastoreId);
+
+            // deploy the OVF library item with the spec, on the target
+            DeploymentResult result =
+                    client.ovfLibraryItem().deploy(null, itemId, target, spec);
+
+            // display result of the operation
+            String messageOnSuccess = "OVF item deployment succeeded." +
+                    "\nDeployment information:" + " " + result.getResourceId().getType()
+                    + " " + result.getResourceId().getId();
+            String messageOnFailure = "OVF item deployment failed.";
+            OvfUtil.displayOperationResult(result.getSucceeded(),
+                    result.getError(), messageOnSuccess, messageOnFailure);
+        } else {
+            // one spec per VM, deployed concurrently
+            List<ResourcePoolDeploymentSpec> specs = new ArrayList<>();
+            for (int i = 1; i <= vmCount; i++) {
+                specs.add(createResourcePoolDeploymentSpec(entityName + "-" + i, true, networkMap,
+                        datastoreId));
+            }
+            OvfBatchDeployer.displayResults(deployer.deployAll(itemId, target, specs));
+        }
     }
 
     private Map<String, String> displayOvfParamsAndGetNetworkSettings(String itemId, DeploymentTarget target) {
-        OvfSummary summary = client.ovfLibraryItem().filter(itemId, target);
+        OvfSummary summary = deployer.getSummary(itemId, target);
         IOUtil.print("OVF name: " + summary.getName());
         IOUtil.print("OVF description: " + summary.getAnnotation());
         // display network sections and get the network choice from user
@@ -117,7 +141,7 @@ public class DeployOvf extends AbstractSample {
     }
 
     private ResourcePoolDeploymentSpec createResourcePoolDeploymentSpec(String entityName,
-            boolean acceptAllEULA, Map<String, String> networkMap) {
+            boolean acceptAllEULA, Map<String, String> networkMap, String datastoreId) {
         ResourcePoolDeploymentSpec spec = new ResourcePoolDeploymentSpec();
         spec.setAcceptAllEULA(acceptAllEULA); /* only this field is mandatory in the spec */
         spec.setName(entityName);
@@ -126,9 +150,6 @@ public class DeployOvf extends AbstractSample {
         if (networkMap != null) {
             spec.setNetworkMappings(networkMap);
         }
-        // If specific datastore ID was specified, use it now
-        String datastoreId =
-                IOUtil.read("Enter datastore ID (press enter for default): ");
         if (!datastoreId.isEmpty()) {
             spec.setDefaultDatastoreId(datastoreId);
         }
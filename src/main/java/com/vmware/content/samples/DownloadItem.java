@@ -25,6 +25,8 @@ import com.vmware.content.samples.client.util.IOUtil;
  * @see http://blogs.vmware.com/developer/2015/06/api-tutorial-downloading-files-content-library-item.html
  */
 public class DownloadItem extends AbstractSample {
+    private static final int PARALLEL_DOWNLOADS = 4;
+
     public static void main(String[] args) {
         DownloadItem sample = new DownloadItem();
         sample.run(args);
@@ -37,6 +39,6 @@ public class DownloadItem extends AbstractSample {
         String itemId = IOUtil.read("Enter item ID to download: ");
         String path = IOUtil.read("Enter directory to store the " +
                 "downloaded files; for example, /tmp: ");
-        ClsApiHelper.downloadFilesFromItem(client, itemId, path);
+        ClsApiHelper.downloadFilesFromItem(client, itemId, path, PARALLEL_DOWNLOADS);
     }
 }
@@ -14,37 +14,39 @@
  ******************************************************************************/
 package com.vmware.content.samples;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.net.URI;
-
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
 import com.vmware.content.library.item.UpdateSessionModel;
 import com.vmware.content.library.item.updatesession.FileTypes.AddSpec;
 import com.vmware.content.library.item.updatesession.FileTypes.Info;
 import com.vmware.content.library.item.updatesession.FileTypes.SourceType;
 import com.vmware.content.library.item.updatesession.FileTypes.ValidationResult;
+import com.vmware.content.samples.client.util.ChecksumReadAhead;
+import com.vmware.content.samples.client.util.ChecksumUtil;
+import com.vmware.content.samples.client.util.FileSliceEntity;
+import com.vmware.content.samples.client.util.HttpUtil;
 import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.content.samples.client.util.OvaIndex;
 
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLContextBuilder;
-import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
-import org.apache.http.entity.AbstractHttpEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 
 /**
  * This API sample demonstrates upload of an OVA package
  * from local storage into an OVF item in a content library.
  */
 public class ImportOva extends AbstractSample {
+    private static final int PARALLEL_UPLOADS = 4;
 
     public static void main(String[] args) throws Exception {
         ImportOva sample = new ImportOva();
@@ -79,6 +81,7 @@ public class ImportOva extends AbstractSample {
             }
             // mark the session as completed
             client.updateSession().complete(sessionId);
+            client.metadataCache().invalidateItem(itemId);
             IOUtil.print("Upload of OVA file finished successfully");
         } catch (Exception e) {
             // if anything goes wrong, try to cancel the session
@@ -91,115 +94,84 @@ public class ImportOva extends AbstractSample {
         ClsApiHelper.printItemsFromLibrary(client, libraryId);
     }
 
-    private URI generateUploadUri(String sessionId, String fileName) {
+    private URI generateUploadUri(String sessionId, String fileName, long size, ChecksumInfo checksumInfo) {
         // add the OVF file
         AddSpec fileSpec = new AddSpec();
         fileSpec.setName(fileName);
         fileSpec.setSourceType(SourceType.PUSH);
+        fileSpec.setSize(size);
+        fileSpec.setChecksumInfo(checksumInfo);
         Info fileInfo = client.updateSessionFile().add(sessionId, fileSpec);
         URI uploadUri = fileInfo.getUploadEndpoint().getUri();
         return uploadUri;
     }
 
-    private void uploadOva(String ovaPath, String sessionId) throws Exception {
-        SSLContextBuilder builder = new SSLContextBuilder();
-        builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
-        SSLConnectionSocketFactory sslsf =
-                new SSLConnectionSocketFactory(builder.build());
-        CloseableHttpClient httpclient =
-                HttpClients.custom().setSSLSocketFactory(sslsf).build();
+    private void uploadOva(String ovaPath, final String sessionId) throws Exception {
         IOUtil.print("Streaming OVF to update session " + sessionId);
-        try (TarArchiveInputStream tar =
-                new TarArchiveInputStream(new FileInputStream(ovaPath))) {
-            TarArchiveEntry entry;
-            while ((entry = tar.getNextTarEntry()) != null) {
-                long bytes = entry.getSize();
-                IOUtil.print("Uploading " + entry.getName() + " (" + entry.getSize() + " bytes)");
-                URI uploadUri = generateUploadUri(sessionId, entry.getName());
-                HttpPut request = new HttpPut(uploadUri);
-                HttpEntity content = new TarBasedInputStreamEntity(tar, bytes);
-                request.setEntity(content);
-                HttpResponse response = httpclient.execute(request);
-                EntityUtils.consumeQuietly(response.getEntity());
-            }
-        }
-    }
-
-    private static class TarBasedInputStreamEntity extends AbstractHttpEntity {
-        private final static int BUFFER_SIZE = 2048;
-
-        private final InputStream content;
-        private final long length;
-        private boolean consumed = false;
-
-        public TarBasedInputStreamEntity(final InputStream instream, long length) {
-            super();
-            if (instream == null) {
-                throw new IllegalArgumentException(
-                        "Source input stream may not be null");
+        OvaIndex ova = OvaIndex.scan(new File(ovaPath));
+        ExecutorService uploadExecutor = Executors.newFixedThreadPool(PARALLEL_UPLOADS);
+        ExecutorService checksumExecutor = Executors.newFixedThreadPool(PARALLEL_UPLOADS);
+        try (FileChannel channel = new RandomAccessFile(ovaPath, "r").getChannel()) {
+            // the descriptor goes first, the files it references follow in parallel;
+            // the checksum of each entry is computed while the entries before it
+            // are uploaded, the first ones are digested while they are sent
+            List<OvaIndex.Entry> entries = new ArrayList<>();
+            List<Callable<ChecksumInfo>> checksums = new ArrayList<>();
+            for (OvaIndex.Entry entry : ova.getEntries()) {
+                if (entry.getName().endsWith(".ovf")) {
+                    uploadEntry(sessionId, channel, entry, null);
+                    continue;
+                }
+                entries.add(entry);
+                checksums.add(ChecksumUtil.checksumTask(channel, entry.getOffset(), entry.getSize(),
+                        ChecksumUtil.DEFAULT_ALGORITHM));
             }
-            this.content = instream;
-            this.length = length;
-        }
-
-        @Override
-        public boolean isRepeatable() {
-            return false;
-        }
-
-        @Override
-        public long getContentLength() {
-            return this.length;
-        }
-
-        @Override
-        public InputStream getContent() throws IOException {
-            return this.content;
-        }
-
-        @Override
-        public void writeTo(final OutputStream outstream) throws IOException {
-            if (outstream == null) {
-                throw new IllegalArgumentException(
-                        "Output stream may not be null");
+            final ChecksumReadAhead readAhead =
+                    new ChecksumReadAhead(checksumExecutor, checksums, PARALLEL_UPLOADS);
+            List<Future<Void>> uploads = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                final int index = i;
+                final OvaIndex.Entry entry = entries.get(i);
+                uploads.add(uploadExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        uploadEntry(sessionId, channel, entry, readAhead.startUpload(index));
+                        return null;
+                    }
+                }));
             }
-            InputStream instream = this.content;
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int l;
-            if (this.length < 0) {
-                // consume until EOF
-                while ((l = instream.read(buffer)) != -1) {
-                    outstream.write(buffer, 0, l);
-                }
-            } else {
-                // consume no more than length
-                long remaining = this.length;
-                while (remaining > 0) {
-                    l =
-                            instream.read(buffer, 0,
-                                    (int) Math.min(BUFFER_SIZE, remaining));
-                    if (l == -1) {
-                        break;
+            for (Future<Void> upload : uploads) {
+                try {
+                    upload.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
                     }
-                    outstream.write(buffer, 0, l);
-                    remaining -= l;
+                    throw e;
                 }
             }
-            this.consumed = true;
-        }
-
-        @Override
-        public boolean isStreaming() {
-            return !this.consumed;
+        } finally {
+            checksumExecutor.shutdownNow();
+            uploadExecutor.shutdownNow();
         }
+    }
 
-        @Override
-        @Deprecated
-        public void consumeContent() throws IOException {
-            this.consumed = true;
-            // If the input stream is from a connection, closing it will read to
-            // the end of the content. Otherwise, we don't care what it does.
-            this.content.close();
-        }
+    /**
+     * Adds an entry of the OVA to the session and uploads it. The entry is
+     * digested while it is sent unless its checksum was computed ahead.
+     *
+     * @param checksumInfo checksum computed ahead, may be {@code null}.
+     */
+    private void uploadEntry(String sessionId, FileChannel channel, OvaIndex.Entry entry,
+            ChecksumInfo checksumInfo) throws Exception {
+        IOUtil.print("Uploading " + entry.getName() + " (" + entry.getSize() + " bytes)");
+        UploadChecksum checksum = new UploadChecksum(checksumInfo);
+        URI uploadUri = generateUploadUri(sessionId, entry.getName(), entry.getSize(),
+                checksum.getChecksumInfo());
+        HttpPut request = new HttpPut(uploadUri);
+        request.setEntity(new FileSliceEntity(channel, entry.getOffset(), entry.getSize(),
+                checksum.getDigest()));
+        HttpUtil.executeAndConsume(request);
+        checksum.verify(client, sessionId, entry.getName());
     }
 }
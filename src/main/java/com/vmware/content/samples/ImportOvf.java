@@ -20,15 +20,28 @@ import java.net.URI;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.vmware.content.TypeTypes.Info;
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
 import com.vmware.content.library.item.UpdateSessionModel;
 import com.vmware.content.library.item.updatesession.FileTypes;
 import com.vmware.content.library.item.updatesession.FileTypes.AddSpec;
 import com.vmware.content.library.item.updatesession.FileTypes.SourceType;
 import com.vmware.content.library.item.updatesession.FileTypes.ValidationResult;
+import com.vmware.content.samples.client.util.ChecksumReadAhead;
+import com.vmware.content.samples.client.util.ChecksumUtil;
 import com.vmware.content.samples.client.util.HttpUtil;
 import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.content.samples.client.util.OvfDescriptor;
 
 /**
  * This API sample demonstrates import/upload of
@@ -43,6 +56,9 @@ import com.vmware.content.samples.client.util.IOUtil;
  * @see http://blogs.vmware.com/developer/2015/05/api-tutorial-uploading-ovf-content-library.html
  */
 public class ImportOvf extends AbstractSample {
+    private static final int CHECKSUM_THREADS = 2;
+    private static final int PARALLEL_UPLOADS = 4;
+    private static final int MAX_VALIDATE_ROUNDS = 10;
 
     public static void main(String[] args) {
         ImportOvf sample = new ImportOvf();
@@ -52,7 +68,7 @@ public class ImportOvf extends AbstractSample {
     @Override
     public void runSample(String[] args) throws Exception {
         // list available types
-        for (Info type : client.type().list()) {
+        for (Info type : client.metadataCache().listTypes()) {
             IOUtil.print(type.getName());
         }
 
@@ -72,7 +88,7 @@ public class ImportOvf extends AbstractSample {
         String secondItemId = ClsApiHelper.createItem(client, libraryId, "ttylinux-from-local", "ovf");
         IOUtil.print("Created another OVF item in the library. ItemId: "+ secondItemId);
         IOUtil.print("Let's upload OVF file from local storage to it.");
-        uploadOvfFromLocalStorageToItem(secondItemId);
+        uploadOvfFromLocalStorageToItem(secondItemId, PARALLEL_UPLOADS);
         IOUtil.print("Uploaded files from local storage");
 
         // list all the items from the library
@@ -80,40 +96,164 @@ public class ImportOvf extends AbstractSample {
         ClsApiHelper.printItemsFromLibrary(client, libraryId);
     }
 
-    private void uploadOvfFromLocalStorageToItem(String itemId)
-            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+    private void uploadOvfFromLocalStorageToItem(String itemId, int parallelism) throws NoSuchAlgorithmException,
+            KeyStoreException, KeyManagementException, IOException, InterruptedException {
         UpdateSessionModel updateSessionModel = new UpdateSessionModel();
         updateSessionModel.setLibraryItemId(itemId);
         String sessionId =
                 client.updateSession().create(null, updateSessionModel);
-
-        // add the OVF file to the session
-        String ovfFilePath = IOUtil.read("Enter path to the OVF file on the local storage: ");
-        File ovfFile = new File(ovfFilePath);
-        AddSpec fileSpec = new AddSpec();
-        fileSpec.setName("ttylinux.ovf");
-        fileSpec.setSourceType(SourceType.PUSH);
-        FileTypes.Info file = client.updateSessionFile().add(sessionId, fileSpec);
-
-        IOUtil.print("OVF file from local storage is being uploaded");
-        HttpUtil.uploadFileToUri(new File(ovfFilePath), file.getUploadEndpoint().getUri());
-
-        IOUtil.print("Validating OVF upload");
-        // validate the OVF file
-        ValidationResult result =
-                client.updateSessionFile().validate(sessionId);
-
-        for (String missingFile : result.getMissingFiles()) {
-            IOUtil.print("Uploading missing file: " + missingFile);
-            fileSpec = new AddSpec();
-            fileSpec.setName(missingFile);
+        boolean completed = false;
+        try {
+            // add the OVF file to the session
+            String ovfFilePath = IOUtil.read("Enter path to the OVF file on the local storage: ");
+            File ovfFile = new File(ovfFilePath);
+            AddSpec fileSpec = new AddSpec();
+            fileSpec.setName("ttylinux.ovf");
             fileSpec.setSourceType(SourceType.PUSH);
-            file = client.updateSessionFile().add(sessionId, fileSpec);
+            fileSpec.setSize(ovfFile.length());
+            FileTypes.Info file = client.updateSessionFile().add(sessionId, fileSpec);
+
+            IOUtil.print("OVF file from local storage is being uploaded");
+            UploadChecksum checksum = new UploadChecksum(null);
+            HttpUtil.uploadFileToUri(ovfFile, file.getUploadEndpoint().getUri(), checksum.getDigest());
+            checksum.verify(client, sessionId, file.getName());
+
+            uploadReferencedFiles(sessionId, ovfFile, parallelism);
+
+            // complete the session
+            client.updateSession().complete(sessionId);
+            completed = true;
+            client.metadataCache().invalidateItem(itemId);
+        } catch (Exception e) {
+            // if anything goes wrong, try to cancel the session
+            client.updateSession().cancel(sessionId);
+            throw e;
+        } finally {
+            try {
+                client.updateSession().delete(sessionId);
+            } finally {
+                if (!completed) {
+                    // the item got partial content, do not leave it behind
+                    ClsApiHelper.deleteItem(client, itemId);
+                }
+            }
+        }
+    }
+
+    private void uploadReferencedFiles(String sessionId, File ovfFile, int parallelism)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException,
+            InterruptedException {
+        ExecutorService checksumExecutor = Executors.newFixedThreadPool(CHECKSUM_THREADS);
+        ExecutorService uploadExecutor = Executors.newFixedThreadPool(parallelism);
+        try {
+            // the referenced files are known from the descriptor, upload them
+            // right away, the largest first so that it does not finish last
+            OvfDescriptor descriptor = OvfDescriptor.parse(ovfFile);
+            Set<String> referencedFiles = new LinkedHashSet<>();
+            for (OvfDescriptor.FileReference reference : descriptor.getFilesLargestFirst()) {
+                referencedFiles.add(reference.getHref());
+            }
+            IOUtil.print("Uploading " + referencedFiles.size() + " referenced files, "
+                    + descriptor.getTotalFileSize() + " bytes");
+            uploadFiles(sessionId, ovfFile, referencedFiles, checksumExecutor, uploadExecutor, parallelism);
+
+            // the server reports the files still missing, for example the
+            // files referenced by other descriptors among the uploaded files
+            for (int round = 1; ; round++) {
+                IOUtil.print("Validating OVF upload");
+                ValidationResult result = client.updateSessionFile().validate(sessionId);
+                if (result.getMissingFiles().isEmpty()) {
+                    break;
+                }
+                if (round == MAX_VALIDATE_ROUNDS) {
+                    throw new RuntimeException("Files still missing after " + round
+                            + " validations: " + result.getMissingFiles());
+                }
+                uploadFiles(sessionId, ovfFile, result.getMissingFiles(),
+                        checksumExecutor, uploadExecutor, parallelism);
+            }
+        } finally {
+            checksumExecutor.shutdownNow();
+            uploadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds files to the session and uploads them concurrently, {@code parallelism}
+     * of them at a time.
+     */
+    private void uploadFiles(final String sessionId, File ovfFile, Set<String> fileNames,
+            ExecutorService checksumExecutor, ExecutorService uploadExecutor, int parallelism)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException,
+            InterruptedException {
+        // the checksum of each file is computed while the files before it are
+        // uploaded; the first files start uploading right away, and are
+        // digested while they are sent
+        List<String> names = new ArrayList<>(fileNames);
+        List<File> localFiles = new ArrayList<>(names.size());
+        List<Callable<ChecksumInfo>> checksums = new ArrayList<>(names.size());
+        for (String fileName : names) {
+            // the names are file references of the descriptor
+            URI uri = OvfDescriptor.resolveHref(ovfFile, fileName);
+            if (!"file".equals(uri.getScheme())) {
+                throw new IOException("Unsupported file reference " + uri);
+            }
+            File localFile = new File(uri);
+            localFiles.add(localFile);
+            checksums.add(ChecksumUtil.checksumTask(localFile, ChecksumUtil.DEFAULT_ALGORITHM));
+        }
+        final ChecksumReadAhead readAhead = new ChecksumReadAhead(checksumExecutor, checksums, parallelism);
+
+        List<Future<Void>> uploads = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            final int index = i;
+            final String fileName = names.get(i);
+            final File localFile = localFiles.get(i);
+            uploads.add(uploadExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    IOUtil.print("Uploading file: " + fileName);
+                    UploadChecksum checksum = new UploadChecksum(readAhead.startUpload(index));
+                    AddSpec fileSpec = new AddSpec();
+                    fileSpec.setName(fileName);
+                    fileSpec.setSourceType(SourceType.PUSH);
+                    fileSpec.setSize(localFile.length());
+                    fileSpec.setChecksumInfo(checksum.getChecksumInfo());
+                    FileTypes.Info file = client.updateSessionFile().add(sessionId, fileSpec);
+                    HttpUtil.uploadFileToUri(localFile, file.getUploadEndpoint().getUri(),
+                            checksum.getDigest());
+                    checksum.verify(client, sessionId, fileName);
+                    return null;
+                }
+            }));
+        }
+        try {
+            waitForUploads(uploads);
+        } finally {
+            readAhead.cancel();
+        }
+    }
 
-            HttpUtil.uploadFileToUri(new File(ovfFile.getParentFile(), missingFile),
-                    file.getUploadEndpoint().getUri());
+    private static void waitForUploads(List<Future<Void>> uploads) throws NoSuchAlgorithmException,
+            KeyStoreException, KeyManagementException, IOException, InterruptedException {
+        for (Future<Void> upload : uploads) {
+            try {
+                upload.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof NoSuchAlgorithmException) {
+                    throw (NoSuchAlgorithmException) cause;
+                } else if (cause instanceof KeyStoreException) {
+                    throw (KeyStoreException) cause;
+                } else if (cause instanceof KeyManagementException) {
+                    throw (KeyManagementException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
         }
-        // complete the session
-        client.updateSession().complete(sessionId);
     }
 }
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.vmware.content.samples.client.ClsApiClient;
+import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.content.samples.client.util.OvfUtil;
+import com.vmware.vcenter.ovf.LibraryItemTypes.DeploymentResult;
+import com.vmware.vcenter.ovf.LibraryItemTypes.DeploymentTarget;
+import com.vmware.vcenter.ovf.LibraryItemTypes.OvfSummary;
+import com.vmware.vcenter.ovf.LibraryItemTypes.ResourcePoolDeploymentSpec;
+
+/**
+ * Deploys many virtual machines from OVF items, with a bounded number of
+ * deployments running at once.
+ * <p>
+ * The OVF summaries returned by the filter call are cached per item content
+ * and deployment target, as a batch usually deploys the same item on the
+ * same target many times. Each batch checks its specs against the summary
+ * before deploying, so that a spec which cannot work fails once, not once
+ * per virtual machine.
+ */
+public class OvfBatchDeployer {
+    private final ClsApiClient client;
+    private final int parallelism;
+    // (item content, target) -> summary; a future, so that concurrent callers share one filter call
+    private final ConcurrentMap<String, Future<OvfSummary>> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * Outcome of one deployment of a batch.
+     */
+    public static class Deployment {
+        private final ResourcePoolDeploymentSpec spec;
+        private final DeploymentResult result;
+        private final Exception failure;
+        private final long latencyNanos;
+
+        Deployment(ResourcePoolDeploymentSpec spec, DeploymentResult result, Exception failure,
+                long latencyNanos) {
+            this.spec = spec;
+            this.result = result;
+            this.failure = failure;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public ResourcePoolDeploymentSpec getSpec() {
+            return spec;
+        }
+
+        /**
+         * @return result of the deploy call, or {@code null} if the call failed.
+         */
+        public DeploymentResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return the failure of the deploy call, or {@code null} if the call returned a result.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        public boolean isSucceeded() {
+            return result != null && result.getSucceeded();
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    /**
+     * @param client authenticated ClsApiClient.
+     * @param parallelism maximum number of concurrent deployments.
+     */
+    public OvfBatchDeployer(ClsApiClient client, int parallelism) {
+        this.client = client;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the summary of an OVF item for a deployment target, from the cache if possible.
+     *
+     * @param itemId identifier of the OVF item.
+     * @param target deployment target.
+     * @return the OVF summary.
+     */
+    public OvfSummary getSummary(final String itemId, final DeploymentTarget target) {
+        // a new content of the item gets a new summary
+        String key = itemId + "/" + client.metadataCache().getItem(itemId).getContentVersion()
+                + "/" + target.getResourcePoolId() + "/" + target.getHostId() + "/" + target.getFolderId();
+        Future<OvfSummary> summary = summaries.get(key);
+        if (summary == null) {
+            FutureTask<OvfSummary> filter = new FutureTask<>(new Callable<OvfSummary>() {
+                @Override
+                public OvfSummary call() {
+                    return client.ovfLibraryItem().filter(itemId, target);
+                }
+            });
+            summary = summaries.putIfAbsent(key, filter);
+            if (summary == null) {
+                summary = filter;
+                filter.run();
+            }
+        }
+        try {
+            return summary.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while filtering OVF item " + itemId, e);
+        } catch (ExecutionException e) {
+            // not cached, the next call tries again
+            summaries.remove(key, summary);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Deploys an OVF item once per spec. A failed deployment does not stop the others.
+     *
+     * @param itemId identifier of the OVF item.
+     * @param target deployment target, shared by all the deployments.
+     * @param specs one spec per virtual machine to deploy.
+     * @return the outcome of each deployment, in the order of the specs.
+     * @throws IllegalArgumentException if a spec maps a network the OVF does not have.
+     * @throws InterruptedException
+     */
+    public List<Deployment> deployAll(final String itemId, final DeploymentTarget target,
+            List<ResourcePoolDeploymentSpec> specs) throws InterruptedException {
+        // fails the whole batch if the item cannot be deployed on the target
+        OvfSummary summary = getSummary(itemId, target);
+        Set<String> networks = new HashSet<>();
+        if (summary.getNetworks() != null) {
+            networks.addAll(summary.getNetworks());
+        }
+        for (ResourcePoolDeploymentSpec spec : specs) {
+            Map<String, String> networkMappings = spec.getNetworkMappings();
+            if (networkMappings != null && !networks.containsAll(networkMappings.keySet())) {
+                throw new IllegalArgumentException("Deployment spec " + spec.getName()
+                        + " maps networks not in the OVF: " + networkMappings.keySet()
+                        + " (OVF networks: " + networks + ")");
+            }
+        }
+
+        ExecutorService deployExecutor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Deployment>> deployments = new ArrayList<>(specs.size());
+            for (final ResourcePoolDeploymentSpec spec : specs) {
+                deployments.add(deployExecutor.submit(new Callable<Deployment>() {
+                    @Override
+                    public Deployment call() {
+                        long start = System.nanoTime();
+                        try {
+                            DeploymentResult result = client.ovfLibraryItem().deploy(
+                                    ClsApiHelper.getRandomClientToken(), itemId, target, spec);
+                            return new Deployment(spec, result, null, System.nanoTime() - start);
+                        } catch (RuntimeException e) {
+                            return new Deployment(spec, null, e, System.nanoTime() - start);
+                        }
+                    }
+                }));
+            }
+            List<Deployment> results = new ArrayList<>(specs.size());
+            for (Future<Deployment> deployment : deployments) {
+                try {
+                    results.add(deployment.get());
+                } catch (ExecutionException e) {
+                    // failures are caught by the tasks
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            deployExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Displays the result of each deployment, and the latencies of the batch.
+     *
+     * @param deployments outcomes of a batch.
+     */
+    public static void displayResults(List<Deployment> deployments) {
+        int succeeded = 0;
+        long[] latencies = new long[deployments.size()];
+        for (int i = 0; i < deployments.size(); i++) {
+            Deployment deployment = deployments.get(i);
+            latencies[i] = deployment.getLatencyNanos();
+            String name = deployment.getSpec().getName();
+            String latency = " (" + deployment.getLatencyNanos() / 1000000 + " ms)";
+            if (deployment.getFailure() != null) {
+                IOUtil.print("Deployment of " + name + " failed" + latency + ": "
+                        + deployment.getFailure().getMessage());
+                continue;
+            }
+            DeploymentResult result = deployment.getResult();
+            // a failed deployment has no resource
+            String messageOnSuccess = null;
+            if (result.getSucceeded()) {
+                succeeded++;
+                messageOnSuccess = "Deployment of " + name + " succeeded" + latency + ": "
+                        + result.getResourceId().getType() + " " + result.getResourceId().getId();
+            }
+            OvfUtil.displayOperationResult(result.getSucceeded(), result.getError(),
+                    messageOnSuccess, "Deployment of " + name + " failed" + latency + ".");
+        }
+        if (latencies.length > 0) {
+            Arrays.sort(latencies);
+            IOUtil.print(succeeded + " of " + deployments.size() + " deployments succeeded; latency min "
+                    + latencies[0] / 1000000 + " ms, median " + latencies[latencies.length / 2] / 1000000
+                    + " ms, max " + latencies[latencies.length - 1] / 1000000 + " ms");
+        }
+    }
+}
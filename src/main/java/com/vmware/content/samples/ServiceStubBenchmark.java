@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import com.vmware.content.Type;
+import com.vmware.content.library.item.downloadsession.File;
+import com.vmware.content.samples.client.util.IOUtil;
+
+/**
+ * A micro-benchmark of the service accessors of the client, as called from
+ * tight loops such as the polling for prepared download files.
+ * <p>
+ * The accessors used to create a new stub on every call; they now create
+ * it on the first access after login and reuse it. Both are timed here.
+ * <p>
+ * The reused services also renew an expired session and replay the call,
+ * through a reflective proxy in front of the stub. A cheap remote call is
+ * timed through the proxy and through a plain stub, to show what the proxy
+ * costs next to the round trip it wraps.
+ */
+public class ServiceStubBenchmark extends AbstractSample {
+    private static final int CALLS = 1000000;
+    private static final int UNCACHED_CALLS = 10000;
+    private static final int REMOTE_CALLS = 200;
+
+    // keeps the accessor calls from being optimized away
+    private int sink;
+
+    public static void main(String[] args) {
+        ServiceStubBenchmark sample = new ServiceStubBenchmark();
+        sample.run(args);
+    }
+
+    @Override
+    protected void runSample(String[] args) throws Exception {
+        long start = System.nanoTime();
+        client.downloadSessionFile();
+        IOUtil.print("First access (stub creation): " + (System.nanoTime() - start) + " ns");
+
+        // warm up, then measure
+        createStubs(UNCACHED_CALLS);
+        start = System.nanoTime();
+        createStubs(UNCACHED_CALLS);
+        long uncached = (System.nanoTime() - start) / UNCACHED_CALLS;
+        IOUtil.print("Uncached accesses (new stub per call): " + uncached + " ns per call, "
+                + UNCACHED_CALLS + " calls");
+
+        accessServices(CALLS);
+        start = System.nanoTime();
+        accessServices(CALLS);
+        long cached = (System.nanoTime() - start) / CALLS;
+        IOUtil.print("Cached accesses (reused stub): " + cached + " ns per call, "
+                + CALLS + " calls");
+        IOUtil.print("Overhead removed per call: " + (uncached - cached) + " ns");
+
+        Type stub = client.newStub(Type.class);
+        Type proxy = client.type();
+        listTypes(stub, REMOTE_CALLS);
+        listTypes(proxy, REMOTE_CALLS);
+        start = System.nanoTime();
+        listTypes(stub, REMOTE_CALLS);
+        long direct = (System.nanoTime() - start) / REMOTE_CALLS;
+        start = System.nanoTime();
+        listTypes(proxy, REMOTE_CALLS);
+        long proxied = (System.nanoTime() - start) / REMOTE_CALLS;
+        IOUtil.print("Remote calls through the stub: " + direct / 1000 + " us per call, "
+                + REMOTE_CALLS + " calls");
+        IOUtil.print("Remote calls through the renewing proxy: " + proxied / 1000 + " us per call, "
+                + REMOTE_CALLS + " calls");
+        IOUtil.print("Proxy overhead per remote call: " + (proxied - direct) + " ns ("
+                + String.format("%.2f", 100.0 * (proxied - direct) / direct) + "%)");
+    }
+
+    private void createStubs(int calls) {
+        for (int i = 0; i < calls; i++) {
+            // what the accessor did before stubs were cached
+            sink += System.identityHashCode(client.newStub(File.class));
+        }
+    }
+
+    private void listTypes(Type type, int calls) {
+        for (int i = 0; i < calls; i++) {
+            sink += type.list().size();
+        }
+    }
+
+    private void accessServices(int calls) {
+        for (int i = 0; i < calls; i++) {
+            // same accessor as the prepare poller, once per poll
+            sink += System.identityHashCode(client.downloadSessionFile());
+        }
+    }
+}
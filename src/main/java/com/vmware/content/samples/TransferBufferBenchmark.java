@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import com.vmware.content.samples.client.util.BufferPool;
+import com.vmware.content.samples.client.util.FileSliceEntity;
+import com.vmware.content.samples.client.util.IOUtil;
+
+/**
+ * A local benchmark (no vCenter Server needed) of the copy loop used to
+ * send upload content, comparing a small 2 KB buffer with pooled large buffers.
+ * <p>
+ * Entities of sizes from a few KB up to 1 GB (or the size in MB given as the
+ * first argument) are written to an output stream which discards the bytes,
+ * so that only the cost of the copy loop is measured.
+ */
+public class TransferBufferBenchmark {
+    private static final int SMALL_BUFFER_SIZE = 2048;
+    private static final int[] POOLED_BUFFER_SIZES = {256 * 1024, 1024 * 1024};
+    private static final long[] ENTITY_SIZES = {
+            4L * 1024, 1024L * 1024, 64L * 1024 * 1024, 1024L * 1024 * 1024};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        long maxSize = args.length > 0 ? Long.parseLong(args[0]) * 1024 * 1024 : Long.MAX_VALUE;
+        for (long size : ENTITY_SIZES) {
+            if (size > maxSize) {
+                break;
+            }
+            File file = createFile(size);
+            try {
+                IOUtil.print("Entity size: " + size + " bytes");
+                IOUtil.print("    2 KB copy loop:      " + format(size, measureSmallBuffer(file)));
+                for (int bufferSize : POOLED_BUFFER_SIZES) {
+                    IOUtil.print("    " + bufferSize / 1024 + " KB pooled buffer: "
+                            + format(size, measurePooledBuffer(file, new BufferPool(bufferSize, 1))));
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static long measureSmallBuffer(File file) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            // same loop as the stream entity previously used to upload OVA entries
+            try (InputStream in = new FileInputStream(file);
+                 OutputStream out = new DiscardingOutputStream()) {
+                byte[] buffer = new byte[SMALL_BUFFER_SIZE];
+                int l;
+                while ((l = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, l);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static long measurePooledBuffer(File file, BufferPool bufferPool) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            try (FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+                 OutputStream out = new DiscardingOutputStream()) {
+                new FileSliceEntity(channel, 0, channel.size(), bufferPool).writeTo(out);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static File createFile(long size) throws IOException {
+        File file = File.createTempFile("transfer-benchmark", ".bin");
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(0).nextBytes(chunk);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < size; written += chunk.length) {
+                randomAccessFile.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    private static String format(long size, long nanos) {
+        double megabytesPerSecond = size / (1024.0 * 1024.0) / (nanos / 1e9);
+        return String.format("%10.1f MB/s (%.3f ms)", megabytesPerSecond, nanos / 1e6);
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
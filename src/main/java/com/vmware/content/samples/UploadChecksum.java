@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
+import com.vmware.content.samples.client.ClsApiClient;
+import com.vmware.content.samples.client.util.ChecksumUtil;
+
+/**
+ * Checksum of a file pushed to an update session: either computed ahead and
+ * set in the file spec, or digested while the file is sent and verified
+ * against the checksum the server computed, before the session is completed.
+ */
+public class UploadChecksum {
+    private final ChecksumInfo checksumInfo;
+    private final MessageDigest digest;
+
+    /**
+     * @param checksumInfo checksum computed ahead, or {@code null} to digest the
+     *                     file while it is sent.
+     */
+    public UploadChecksum(ChecksumInfo checksumInfo) {
+        this.checksumInfo = checksumInfo;
+        this.digest = checksumInfo == null
+                ? ChecksumUtil.newMessageDigest(ChecksumUtil.DEFAULT_ALGORITHM) : null;
+    }
+
+    /**
+     * @return checksum to set in the file spec, or {@code null} if the file is digested.
+     */
+    public ChecksumInfo getChecksumInfo() {
+        return checksumInfo;
+    }
+
+    /**
+     * @return digest to update with the bytes sent, or {@code null} if the checksum is known.
+     */
+    public MessageDigest getDigest() {
+        return digest;
+    }
+
+    /**
+     * Checks the digest of the bytes sent against the checksum the server
+     * computed; nothing to check when the checksum was set in the file spec.
+     *
+     * @param client authenticated ClsApiClient.
+     * @param sessionId identifier of the update session.
+     * @param fileName name of the file in the update session.
+     * @throws IOException if the checksums differ.
+     */
+    public void verify(ClsApiClient client, String sessionId, String fileName) throws IOException {
+        if (digest != null) {
+            ClsApiHelper.verifyUploadedFile(client, sessionId, fileName,
+                    ChecksumUtil.toChecksumInfo(digest, ChecksumUtil.DEFAULT_ALGORITHM));
+        }
+    }
+}
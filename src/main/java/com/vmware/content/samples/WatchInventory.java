@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples;
+
+import java.io.File;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.library.ItemModel;
+import com.vmware.content.samples.client.ChangeFeed;
+import com.vmware.content.samples.client.InventorySnapshot;
+import com.vmware.content.samples.client.util.IOUtil;
+
+/**
+ * This API sample demonstrates watching the libraries and items of a
+ * vCenter Server instance across runs.
+ * <p>
+ * The inventory snapshot saved by the previous run is loaded and seeds a
+ * change feed, so that the first poll reports only what changed since
+ * then, rather than the whole inventory. The snapshot is saved after each
+ * poll, for the next run to start from.
+ */
+public class WatchInventory extends AbstractSample {
+    private static final long POLL_INTERVAL_MILLIS = 10000;
+
+    public static void main(String[] args) {
+        WatchInventory sample = new WatchInventory();
+        sample.run(args);
+    }
+
+    @Override
+    public void runSample(String[] args) throws Exception {
+        File snapshotFile = new File(IOUtil.read("Enter the path of the inventory snapshot file; " +
+                "for example, /tmp/inventory.snapshot: "));
+        int polls = Integer.parseInt(IOUtil.read("Enter the number of polls: "));
+
+        long start = System.nanoTime();
+        final InventorySnapshot snapshot = InventorySnapshot.load(snapshotFile);
+        IOUtil.print("Loaded " + snapshot + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        ChangeFeed changeFeed = new ChangeFeed(client);
+        changeFeed.seed(snapshot);
+        ChangeFeed.Listener listener = new ChangeFeed.Listener() {
+            @Override
+            public void libraryChanged(ChangeFeed.ChangeType changeType, String libraryId,
+                    LibraryModel library) {
+                IOUtil.print("Library " + libraryId + " " + changeType
+                        + (library != null ? ": " + library.getName() : ""));
+                snapshot.libraryChanged(changeType, libraryId, library);
+            }
+
+            @Override
+            public void itemChanged(ChangeFeed.ChangeType changeType, String itemId, ItemModel item) {
+                IOUtil.print("Item " + itemId + " " + changeType
+                        + (item != null ? ": " + item.getName() : ""));
+                snapshot.itemChanged(changeType, itemId, item);
+            }
+        };
+
+        for (int i = 0; i < polls; i++) {
+            if (i > 0) {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            start = System.nanoTime();
+            changeFeed.poll(listener);
+            IOUtil.print("Poll " + (i + 1) + " took " + (System.nanoTime() - start) / 1000000 + " ms");
+            snapshot.save(snapshotFile);
+        }
+        IOUtil.print("Saved " + snapshot + " to " + snapshotFile.getPath());
+    }
+}
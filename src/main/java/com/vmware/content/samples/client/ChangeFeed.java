@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.library.ItemModel;
+import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.vapi.std.errors.NotFound;
+
+/**
+ * Reports the libraries and items which were added, updated or removed
+ * since the previous poll.
+ * <p>
+ * Additions and removals are found with the list calls alone. Updates are
+ * found from the version fields of the models: libraries are fetched on
+ * every poll, while items, which are far more numerous, are re-fetched in
+ * turns, at most a given number per poll, at a fraction of the cost of a
+ * full crawl. An updated item is therefore reported within
+ * ceil(items / refreshes per poll) polls: with the default of
+ * {@value #DEFAULT_ITEM_REFRESHES_PER_POLL} refreshes, about 60 polls for
+ * 6,000 items. To bound the latency rather than the cost, size the budget
+ * from the item count, see {@link #getPollsPerRefreshCycle()}.
+ * <p>
+ * The first poll reports everything as added, unless the feed is seeded
+ * with a {@link InventorySnapshot} of a previous run.
+ */
+public class ChangeFeed {
+    public static final int DEFAULT_ITEM_REFRESHES_PER_POLL = 100;
+
+    private final ClsApiClient client;
+    private final int itemRefreshesPerPoll;
+
+    // library id -> library version
+    private final Map<String, String> libraryVersions = new HashMap<>();
+    // library id -> (item id -> item version)
+    private final Map<String, Map<String, String>> itemVersions = new HashMap<>();
+    // items in the order they are re-fetched
+    private final Deque<String> itemsToRefresh = new ArrayDeque<>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Kind of change.
+     */
+    public enum ChangeType {
+        ADDED, UPDATED, REMOVED
+    }
+
+    /**
+     * Callback receiving the changes.
+     * The model is {@code null} for removals.
+     */
+    public interface Listener {
+        void libraryChanged(ChangeType changeType, String libraryId, LibraryModel library);
+
+        void itemChanged(ChangeType changeType, String itemId, ItemModel item);
+    }
+
+    public ChangeFeed(ClsApiClient client) {
+        this(client, DEFAULT_ITEM_REFRESHES_PER_POLL);
+    }
+
+    /**
+     * @param client authenticated ClsApiClient.
+     * @param itemRefreshesPerPoll maximum number of known items re-fetched per poll.
+     */
+    public ChangeFeed(ClsApiClient client, int itemRefreshesPerPoll) {
+        this.client = client;
+        this.itemRefreshesPerPoll = itemRefreshesPerPoll;
+    }
+
+    /**
+     * Takes the libraries and items of a snapshot as known, so that the next
+     * poll reports only the changes since the snapshot was taken.
+     * <p>
+     * Additions and removals since the snapshot are reported by the next
+     * poll. Items updated since are found by the turns of re-fetches, so
+     * reconciling them all takes up to a full refresh cycle, see
+     * {@link #getPollsPerRefreshCycle()}.
+     *
+     * @param snapshot inventory snapshot, typically loaded from disk.
+     */
+    public synchronized void seed(InventorySnapshot snapshot) {
+        for (InventorySnapshot.LibraryEntry library : snapshot.getLibraries()) {
+            libraryVersions.put(library.getId(), library.getVersion());
+            itemVersions.put(library.getId(), new HashMap<String, String>());
+        }
+        for (InventorySnapshot.ItemEntry item : snapshot.getItems()) {
+            Map<String, String> knownItems = itemVersions.get(item.getLibraryId());
+            if (knownItems != null && knownItems.put(item.getId(),
+                    item.getVersion() + "/" + item.getContentVersion()) == null) {
+                itemsToRefresh.addLast(item.getId());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of polls it takes to re-fetch every known item once,
+     * the longest an update of an item can go unreported.
+     *
+     * @return ceil(known items / item refreshes per poll).
+     */
+    public synchronized int getPollsPerRefreshCycle() {
+        return (itemsToRefresh.size() + itemRefreshesPerPoll - 1) / itemRefreshesPerPoll;
+    }
+
+    /**
+     * Finds the changes since the previous poll.
+     *
+     * @param listener callback receiving the changes.
+     */
+    public synchronized void poll(Listener listener) {
+        Set<String> libraryIds = new HashSet<>(client.library().list());
+
+        // removed libraries, with their items
+        for (Iterator<String> iterator = libraryVersions.keySet().iterator(); iterator.hasNext(); ) {
+            String libraryId = iterator.next();
+            if (!libraryIds.contains(libraryId)) {
+                iterator.remove();
+                for (String itemId : itemVersions.remove(libraryId).keySet()) {
+                    itemRemoved(itemId, listener);
+                }
+                client.metadataCache().invalidateLibrary(libraryId);
+                listener.libraryChanged(ChangeType.REMOVED, libraryId, null);
+            }
+        }
+
+        for (String libraryId : libraryIds) {
+            LibraryModel library;
+            List<String> itemIds;
+            try {
+                library = client.library().get(libraryId);
+                itemIds = client.item().list(libraryId);
+            } catch (NotFound e) {
+                // removed since the list call, reported by the next poll
+                continue;
+            }
+            String knownVersion = libraryVersions.put(libraryId, library.getVersion());
+            if (knownVersion == null) {
+                itemVersions.put(libraryId, new HashMap<String, String>());
+                listener.libraryChanged(ChangeType.ADDED, libraryId, library);
+            } else if (!knownVersion.equals(library.getVersion())) {
+                client.metadataCache().invalidateLibrary(libraryId);
+                listener.libraryChanged(ChangeType.UPDATED, libraryId, library);
+            }
+            pollItems(itemVersions.get(libraryId), new HashSet<>(itemIds), listener);
+        }
+
+        refreshItems(listener);
+    }
+
+    /**
+     * Polls at a fixed interval on a background thread, until {@link #stop()} is called.
+     *
+     * @param intervalMillis time between polls, in milliseconds.
+     * @param listener callback receiving the changes.
+     */
+    public synchronized void start(long intervalMillis, final Listener listener) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Change feed is already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll(listener);
+                } catch (RuntimeException e) {
+                    // keep polling, the next poll catches up
+                    IOUtil.print("Change feed poll failed: " + e.getMessage());
+                }
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void pollItems(Map<String, String> knownItems, Set<String> itemIds, Listener listener) {
+        for (Iterator<String> iterator = knownItems.keySet().iterator(); iterator.hasNext(); ) {
+            String itemId = iterator.next();
+            if (!itemIds.contains(itemId)) {
+                iterator.remove();
+                itemRemoved(itemId, listener);
+            }
+        }
+        for (String itemId : itemIds) {
+            if (!knownItems.containsKey(itemId)) {
+                ItemModel item;
+                try {
+                    item = client.item().get(itemId);
+                } catch (NotFound e) {
+                    continue;
+                }
+                knownItems.put(itemId, getVersion(item));
+                itemsToRefresh.addLast(itemId);
+                listener.itemChanged(ChangeType.ADDED, itemId, item);
+            }
+        }
+    }
+
+    private void refreshItems(Listener listener) {
+        int refreshes = Math.min(itemRefreshesPerPoll, itemsToRefresh.size());
+        for (int i = 0; i < refreshes; i++) {
+            String itemId = itemsToRefresh.pollFirst();
+            ItemModel item;
+            try {
+                item = client.item().get(itemId);
+            } catch (NotFound e) {
+                // removed, reported by the next poll
+                itemsToRefresh.addLast(itemId);
+                continue;
+            }
+            Map<String, String> knownItems = itemVersions.get(item.getLibraryId());
+            if (knownItems == null || !knownItems.containsKey(itemId)) {
+                // removed from the known items meanwhile
+                continue;
+            }
+            itemsToRefresh.addLast(itemId);
+            String version = getVersion(item);
+            if (!version.equals(knownItems.put(itemId, version))) {
+                client.metadataCache().invalidateItem(itemId);
+                listener.itemChanged(ChangeType.UPDATED, itemId, item);
+            }
+        }
+    }
+
+    private void itemRemoved(String itemId, Listener listener) {
+        itemsToRefresh.remove(itemId);
+        client.metadataCache().invalidateItem(itemId);
+        listener.itemChanged(ChangeType.REMOVED, itemId, null);
+    }
+
+    /**
+     * The metadata and the content of an item are versioned separately.
+     */
+    private static String getVersion(ItemModel item) {
+        return item.getVersion() + "/" + item.getContentVersion();
+    }
+}
@@ -14,8 +14,15 @@
  ******************************************************************************/
 package com.vmware.content.samples.client;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 
@@ -31,6 +38,9 @@ import com.vmware.content.library.item.UpdateSession;
 import com.vmware.content.library.item.downloadsession.File;
 import com.vmware.content.samples.client.util.IOUtil;
 import com.vmware.vapi.bindings.Service;
+import com.vmware.vapi.saml.DefaultTokenFactory;
+import com.vmware.vapi.saml.SamlToken;
+import com.vmware.vapi.std.errors.Unauthenticated;
 import com.vmware.vcenter.ovf.LibraryItem;
 import com.vmware.vcloud.suite.samples.common.LookupServiceHelper;
 import com.vmware.vcloud.suite.samples.common.PlatformServiceController;
@@ -41,16 +51,28 @@ import com.vmware.vcloud.suite.samples.vapi.endpoint.VapiServiceEndpoint;
  * This is a simplified wrapper around the Content Library APIs.
  * It takes care of most of the boilerplate code required for
  * establishing connections and getting authentication.
+ * <p>
+ * The client can be shared by many threads. When a call fails because the
+ * session or its token expired, the client logs in again, once for all the
+ * threads hitting the failure, and replays the call.
  */
 public class ClsApiClient {
     private String username;
     private String password;
+    private String hostname;
     private String lookupServiceUrl;
-    private VapiServiceEndpoint vApiServiceEndpoint;
-    private PlatformServiceController platformServiceController;
-    private String managementNodeId;
-
-    private boolean loggedIn = false;
+    private volatile PlatformServiceController platformServiceController;
+    private volatile String managementNodeId;
+    private volatile MetadataCache metadataCache;
+    private volatile SessionCache sessionCache;
+    // current vAPI session, null when logged out
+    private volatile VapiSession session;
+    // services handed out to callers, which outlive the sessions
+    private final ConcurrentMap<Class<?>, Service> services = new ConcurrentHashMap<>();
+    // VIM connection, connected on first use
+    private final VimConnection vimConnection = new VimConnection(this);
+    // poller shared by the downloads, created on first use
+    private PreparePoller preparePoller;
 
     static {
         // avoid unnecessary log spew on stdout
@@ -58,13 +80,32 @@ public class ClsApiClient {
     }
 
     public ClsApiClient(String hostname, String username, String password) {
-        // assuming default look up service SDK URL
-        this.lookupServiceUrl = "https://" + getHostName(hostname) + "/lookupservice/sdk";
+        this.hostname = hostname;
         this.password = password;
         this.username = username;
+        this.metadataCache = new MetadataCache(this, MetadataCache.DEFAULT_TIME_TO_LIVE_MILLIS,
+                MetadataCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Enables the reuse of the login of a previous process, to be called before {@link #login()}.
+     *
+     * @param sessionCache cache of the login, for the same server and user as this client.
+     */
+    public synchronized void setSessionCache(SessionCache sessionCache) {
+        this.sessionCache = sessionCache;
     }
 
-    public PlatformServiceController getPlatformServiceController() {
+    /**
+     * Gets the platform service controller, logging in to it if this client
+     * logged in with a cached session.
+     *
+     * @return the platform service controller.
+     */
+    public synchronized PlatformServiceController getPlatformServiceController() {
+        if (platformServiceController == null) {
+            loginToPlatformServiceController();
+        }
         return platformServiceController;
     }
 
@@ -73,15 +114,13 @@ public class ClsApiClient {
     }
 
     public synchronized void login() {
+        if (sessionCache != null && loginWithSessionCache()) {
+            return;
+        }
         try {
             // login to platform service controller
             // (in typical vCenter Server installations, this runs sso service)
-            platformServiceController = new PlatformServiceController(lookupServiceUrl);
-            try {
-                platformServiceController.login(username, password);
-            } catch (Exception e) {
-                throw new RuntimeException("Unable to login to vCenter SSO Server", e);
-            }
+            loginToPlatformServiceController();
 
             // look up management node (assuming this system has only one management node)
             LookupServiceHelper lookupService = platformServiceController.getLsServiceHelper();
@@ -97,29 +136,224 @@ public class ClsApiClient {
 
             // login to vAPI
             SSOConnection ssoConn = platformServiceController.getSsoConnection();
-            vApiServiceEndpoint = new VapiServiceEndpoint(vApiUrl);
-            vApiServiceEndpoint.login(ssoConn.getSamlBearerToken());
-            loggedIn = true;
+            SamlToken token = ssoConn.getSamlBearerToken();
+            loginToVapi(vApiUrl, token);
+
+            if (sessionCache != null) {
+                try {
+                    sessionCache.store(vApiUrl, managementNodeId, token);
+                } catch (IOException e) {
+                    IOUtil.print("Cannot cache the session: " + e.getMessage());
+                }
+            }
         } catch (Exception e) {
             throw new RuntimeException("Login failed", e);
         }
     }
 
+    /**
+     * Logs in to vAPI with the token of the session cache.
+     *
+     * @return whether the login succeeded.
+     */
+    private boolean loginWithSessionCache() {
+        SessionCache.Entry entry = sessionCache.load();
+        if (entry == null) {
+            return false;
+        }
+        try {
+            loginToVapi(entry.getVapiUrl(), DefaultTokenFactory.createToken(entry.getTokenXml()));
+        } catch (Exception e) {
+            IOUtil.print("Cached session was rejected, logging in again");
+            sessionCache.clear();
+            return false;
+        }
+        managementNodeId = entry.getManagementNodeId();
+        IOUtil.print("vAPI URL :" + entry.getVapiUrl() + " (cached session)");
+        return true;
+    }
+
+    private void loginToPlatformServiceController() {
+        if (lookupServiceUrl == null) {
+            // assuming default look up service SDK URL
+            lookupServiceUrl = "https://" + getHostName(hostname) + "/lookupservice/sdk";
+        }
+        try {
+            platformServiceController = new PlatformServiceController(lookupServiceUrl);
+            platformServiceController.login(username, password);
+        } catch (Exception e) {
+            platformServiceController = null;
+            throw new RuntimeException("Unable to login to vCenter SSO Server", e);
+        }
+    }
+
+    private void loginToVapi(String vApiUrl, SamlToken token) throws Exception {
+        VapiServiceEndpoint endpoint = new VapiServiceEndpoint(vApiUrl);
+        endpoint.login(token);
+        session = new VapiSession(endpoint);
+    }
+
+    /**
+     * Logs out, if logged in; calling it again does nothing.
+     */
     public void logout() {
-        vApiServiceEndpoint.logout();
-        loggedIn = false;
+        synchronized (this) {
+            if (session == null) {
+                return;
+            }
+            session.endpoint.logout();
+            session = null;
+            metadataCache.invalidateAll();
+            if (preparePoller != null) {
+                preparePoller.shutdown();
+                preparePoller = null;
+            }
+        }
+        // outside the lock of this client, as the VIM connection locks itself
+        // then this client when connecting
+        vimConnection.disconnect();
+    }
+
+    /**
+     * Logs in again after a call failed because its session expired, unless
+     * another thread already did so.
+     *
+     * @param failedSession session of the failed call.
+     */
+    private synchronized void renewSession(VapiSession failedSession) {
+        if (session != failedSession) {
+            // renewed meanwhile, or logged out
+            return;
+        }
+        IOUtil.print("Session expired, logging in again");
+        if (sessionCache != null) {
+            // the cached token is the expired one
+            sessionCache.clear();
+        }
+        login();
+    }
+
+    /**
+     * Gets the cache of library, item and type metadata of this client.
+     *
+     * @return the metadata cache.
+     */
+    public MetadataCache metadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Gets the VIM connection of this client, shared by all its users.
+     *
+     * @return the VIM connection.
+     */
+    public VimConnection vimConnection() {
+        return vimConnection;
+    }
+
+    /**
+     * Gets the poller watching the prepares of download session files, shared
+     * by all the downloads of this client.
+     *
+     * @return the prepare poller.
+     */
+    public synchronized PreparePoller preparePoller() {
+        if (preparePoller == null) {
+            preparePoller = new PreparePoller(this);
+        }
+        return preparePoller;
+    }
+
+    /**
+     * Replaces the metadata cache of this client with an empty one. Threads
+     * which got the previous cache keep using it until they get the cache again.
+     *
+     * @param timeToLiveMillis time after which cached metadata expires, in milliseconds.
+     * @param maxEntries maximum number of cached entries.
+     */
+    public synchronized void configureMetadataCache(long timeToLiveMillis, int maxEntries) {
+        metadataCache = new MetadataCache(this, timeToLiveMillis, maxEntries);
     }
 
-    private void checkLoggedIn() {
-        if (!loggedIn) {
+    private VapiSession checkLoggedIn() {
+        VapiSession current = session;
+        if (current == null) {
             throw new IllegalStateException(
                     "login() must be called before accessing services");
         }
+        return current;
     }
 
-    private <T extends Service> T getService(Class<T> serviceClass) {
+    /**
+     * Gets a service. The service calls the stub of the current session, and
+     * renews the session and replays the call when it fails as unauthenticated;
+     * the server rejects such a call before running it, so replaying is safe.
+     * Services are created once and reused, as the accessors below are called
+     * from tight upload and polling loops. The reflective dispatch of the proxy
+     * costs well under a microsecond, negligible next to the remote call it
+     * wraps, see {@code ServiceStubBenchmark}. The target exception of every
+     * failed stub call is rethrown unwrapped.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Service> T getService(final Class<T> serviceClass) {
         checkLoggedIn();
-        return (T) vApiServiceEndpoint.getService(serviceClass);
+        Service service = services.get(serviceClass);
+        if (service == null) {
+            service = (Service) Proxy.newProxyInstance(serviceClass.getClassLoader(),
+                    new Class<?>[] {serviceClass}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                                throws Throwable {
+                            if (method.getDeclaringClass() == Object.class) {
+                                return invokeObjectMethod(proxy, method, args, serviceClass);
+                            }
+                            VapiSession current = checkLoggedIn();
+                            try {
+                                return invokeStub(current, serviceClass, method, args);
+                            } catch (Unauthenticated e) {
+                                renewSession(current);
+                                return invokeStub(checkLoggedIn(), serviceClass, method, args);
+                            }
+                        }
+                    });
+            Service existing = services.putIfAbsent(serviceClass, service);
+            if (existing != null) {
+                service = existing;
+            }
+        }
+        return (T) service;
+    }
+
+    /**
+     * Creates a new stub of a service bound to the current session, as the
+     * accessors did before caching their stubs; the stub is neither cached
+     * nor renewed with the session. Meant for comparisons with the accessors,
+     * see {@code ServiceStubBenchmark}.
+     *
+     * @param serviceClass class of the service.
+     * @return a new stub.
+     */
+    public <T extends Service> T newStub(Class<T> serviceClass) {
+        return checkLoggedIn().endpoint.getService(serviceClass);
+    }
+
+    private static Object invokeStub(VapiSession session, Class<? extends Service> serviceClass,
+            Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(session.getStub(serviceClass), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args,
+            Class<?> serviceClass) {
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        } else if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        return "ClsApiClient service " + serviceClass.getName();
     }
 
     public Library library() {
@@ -142,6 +376,10 @@ public class ClsApiClient {
         return getService(LibraryItem.class);
     }
 
+    public com.vmware.content.library.item.File itemFile() {
+        return getService(com.vmware.content.library.item.File.class);
+    }
+
     public Storage storage() {
         return getService(Storage.class);
     }
@@ -170,6 +408,30 @@ public class ClsApiClient {
         return getService(Type.class);
     }
 
+    /**
+     * A vAPI session, with the service stubs bound to it.
+     */
+    private static class VapiSession {
+        private final VapiServiceEndpoint endpoint;
+        private final ConcurrentMap<Class<?>, Service> stubs = new ConcurrentHashMap<>();
+
+        VapiSession(VapiServiceEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        Service getStub(Class<? extends Service> serviceClass) {
+            Service stub = stubs.get(serviceClass);
+            if (stub == null) {
+                stub = endpoint.getService(serviceClass);
+                Service existing = stubs.putIfAbsent(serviceClass, stub);
+                if (existing != null) {
+                    stub = existing;
+                }
+            }
+            return stub;
+        }
+    }
+
     private static String getHostName(String ip) {
         InetAddress address;
         try {
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.content.samples.client.util.IOUtil;
+
+/**
+ * A pool of clients, each logged in with its own vAPI session, to spread
+ * concurrent work over several sessions.
+ * <p>
+ * Worker threads lease a client for a unit of work; each lease goes to the
+ * session with the fewest leases in flight. Leases are balanced, not calls:
+ * a lease counts once however many calls it makes, so units of work should
+ * be of similar size. Sessions are health-checked in the background, and a
+ * session failing its check is replaced by a new one; the failed one drains,
+ * and is logged out once its last lease is closed.
+ * <pre>
+ * try (ClsApiClientPool.Lease lease = pool.acquire()) {
+ *     ClsApiHelper.createItem(lease.client(), ...);
+ * }
+ * </pre>
+ */
+public class ClsApiClientPool {
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = 60 * 1000;
+
+    private final String hostname;
+    private final String username;
+    private final String password;
+    private final PooledSession[] sessions;
+    private final ScheduledExecutorService healthChecker;
+    private boolean shutdown;
+
+    private static class PooledSession {
+        private final int index;
+        private PooledClient current;
+        private long leases;
+
+        PooledSession(int index, ClsApiClient client) {
+            this.index = index;
+            this.current = new PooledClient(client);
+        }
+    }
+
+    /**
+     * A client of a session, with its leases in flight. A replaced client
+     * drains: it gets no new lease and is logged out once the last is closed.
+     */
+    private static class PooledClient {
+        private final ClsApiClient client;
+        private int inFlight;
+        private boolean draining;
+
+        PooledClient(ClsApiClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Marks the client as draining.
+         *
+         * @return whether the client can be logged out right away.
+         */
+        boolean retire() {
+            draining = true;
+            return inFlight == 0;
+        }
+    }
+
+    /**
+     * A client leased from the pool, to be closed once the work is done.
+     */
+    public final class Lease implements AutoCloseable {
+        private final PooledClient pooledClient;
+        private boolean closed;
+
+        private Lease(PooledClient pooledClient) {
+            this.pooledClient = pooledClient;
+        }
+
+        public ClsApiClient client() {
+            return pooledClient.client;
+        }
+
+        /**
+         * Returns the client to the pool, and logs it out if it was replaced
+         * and this was its last lease.
+         */
+        @Override
+        public void close() {
+            boolean drained;
+            synchronized (ClsApiClientPool.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pooledClient.inFlight--;
+                drained = pooledClient.draining && pooledClient.inFlight == 0;
+            }
+            if (drained) {
+                logout(pooledClient.client);
+            }
+        }
+    }
+
+    public ClsApiClientPool(String hostname, String username, String password, int size) {
+        this(hostname, username, password, size, DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Logs in all the sessions of the pool.
+     *
+     * @param hostname hostname/IP of the vCenter SSO server.
+     * @param username SSO username.
+     * @param password SSO password.
+     * @param size number of sessions.
+     * @param healthCheckIntervalMillis time between health checks of the sessions, in milliseconds.
+     */
+    public ClsApiClientPool(String hostname, String username, String password, int size,
+            long healthCheckIntervalMillis) {
+        this.hostname = hostname;
+        this.username = username;
+        this.password = password;
+        this.sessions = new PooledSession[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                sessions[i] = new PooledSession(i, newClient());
+            }
+        } catch (RuntimeException e) {
+            for (PooledSession session : sessions) {
+                if (session != null) {
+                    logout(session.current.client);
+                }
+            }
+            throw e;
+        }
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "client-pool-health-checker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkHealth();
+            }
+        }, healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases the client of the session with the fewest leases in flight.
+     *
+     * @return the lease, to be closed once the work is done.
+     */
+    public synchronized Lease acquire() {
+        if (shutdown) {
+            throw new IllegalStateException("The client pool is shut down");
+        }
+        PooledSession leastBusy = sessions[0];
+        for (PooledSession session : sessions) {
+            if (session.current.inFlight < leastBusy.current.inFlight) {
+                leastBusy = session;
+            }
+        }
+        leastBusy.current.inFlight++;
+        leastBusy.leases++;
+        return new Lease(leastBusy.current);
+    }
+
+    /**
+     * @return the number of leases in flight, per session.
+     */
+    public synchronized int[] getInFlightCounts() {
+        int[] counts = new int[sessions.length];
+        for (int i = 0; i < sessions.length; i++) {
+            counts[i] = sessions[i].current.inFlight;
+        }
+        return counts;
+    }
+
+    /**
+     * @return the total number of leases handed out, per session.
+     */
+    public synchronized long[] getLeaseCounts() {
+        long[] counts = new long[sessions.length];
+        for (int i = 0; i < sessions.length; i++) {
+            counts[i] = sessions[i].leases;
+        }
+        return counts;
+    }
+
+    public int size() {
+        return sessions.length;
+    }
+
+    /**
+     * Stops the health checks and logs out all the sessions; the sessions
+     * with leases in flight are logged out once their last lease is closed.
+     */
+    public void shutdown() {
+        healthChecker.shutdownNow();
+        List<ClsApiClient> idle = new ArrayList<>();
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            for (PooledSession session : sessions) {
+                if (session.current.retire()) {
+                    idle.add(session.current.client);
+                }
+            }
+        }
+        for (ClsApiClient client : idle) {
+            logout(client);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("ClsApiClientPool(");
+        for (PooledSession session : sessions) {
+            if (session.index > 0) {
+                builder.append(", ");
+            }
+            builder.append("session ").append(session.index).append(": inFlight=")
+                    .append(session.current.inFlight).append(" leases=").append(session.leases);
+        }
+        return builder.append(")").toString();
+    }
+
+    /**
+     * Checks each session with a cheap call, replacing the failing ones.
+     * Expired sessions are renewed by the clients themselves, so a failure
+     * here means the session cannot be used anymore.
+     */
+    private void checkHealth() {
+        List<ClsApiClient> clients = getClients();
+        for (int i = 0; i < clients.size(); i++) {
+            ClsApiClient client = clients.get(i);
+            try {
+                client.type().list();
+            } catch (RuntimeException e) {
+                IOUtil.print("Session " + i + " failed its health check, replacing it: "
+                        + e.getMessage());
+                ClsApiClient replacement;
+                try {
+                    replacement = newClient();
+                } catch (RuntimeException loginFailure) {
+                    // keep the session, and retry at the next check
+                    IOUtil.print("Cannot replace session " + i + ": " + loginFailure.getMessage());
+                    continue;
+                }
+                boolean idle;
+                synchronized (this) {
+                    if (shutdown) {
+                        idle = false;
+                    } else {
+                        // leases in flight keep the failed client until they are closed
+                        idle = sessions[i].current.retire();
+                        sessions[i].current = new PooledClient(replacement);
+                        replacement = null;
+                    }
+                }
+                if (replacement != null) {
+                    // shut down meanwhile
+                    logout(replacement);
+                    return;
+                }
+                if (idle) {
+                    logout(client);
+                }
+            }
+        }
+    }
+
+    private synchronized List<ClsApiClient> getClients() {
+        List<ClsApiClient> clients = new ArrayList<>(sessions.length);
+        for (PooledSession session : sessions) {
+            clients.add(session.current.client);
+        }
+        return clients;
+    }
+
+    private ClsApiClient newClient() {
+        ClsApiClient client = new ClsApiClient(hostname, username, password);
+        client.login();
+        return client;
+    }
+
+    private static void logout(ClsApiClient client) {
+        try {
+            client.logout();
+        } catch (RuntimeException e) {
+            // the session is gone anyway
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.library.ItemModel;
+import com.vmware.vapi.std.errors.NotFound;
+
+/**
+ * Fetches the libraries and items of a vCenter Server instance,
+ * running the individual get calls concurrently.
+ * <p>
+ * Results are handed out in the order of the list calls, and each library
+ * is handed out as soon as it and the libraries before it are fetched.
+ * Libraries and items deleted while being fetched are left out.
+ * Library and item gets go through the {@link MetadataCache} of the client.
+ */
+public class InventoryFetcher {
+    private static final int MAX_CONCURRENT_LIBRARIES = 4;
+
+    private final ClsApiClient client;
+    private final ExecutorService libraryExecutor;
+    private final ExecutorService itemExecutor;
+
+    /**
+     * Callback receiving the libraries as they are fetched.
+     */
+    public interface Listener {
+        void libraryFetched(LibraryModel library, List<ItemModel> items);
+    }
+
+    /**
+     * @param client authenticated ClsApiClient.
+     * @param parallelism maximum number of concurrent item get calls.
+     */
+    public InventoryFetcher(ClsApiClient client, int parallelism) {
+        this.client = client;
+        this.libraryExecutor = Executors.newFixedThreadPool(Math.min(parallelism, MAX_CONCURRENT_LIBRARIES));
+        this.itemExecutor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * Fetches all the libraries with their items.
+     *
+     * @param listener callback receiving each library, in the order of the library list.
+     */
+    public void fetchAll(Listener listener) {
+        List<Future<LibraryModel>> libraries = new ArrayList<>();
+        List<Future<List<ItemModel>>> items = new ArrayList<>();
+        for (final String libraryId : client.library().list()) {
+            libraries.add(libraryExecutor.submit(new Callable<LibraryModel>() {
+                @Override
+                public LibraryModel call() {
+                    return getOrNull(libraryId);
+                }
+            }));
+            items.add(libraryExecutor.submit(new Callable<List<ItemModel>>() {
+                @Override
+                public List<ItemModel> call() {
+                    return fetchItems(libraryId);
+                }
+            }));
+        }
+        for (int i = 0; i < libraries.size(); i++) {
+            LibraryModel library = await(libraries.get(i));
+            List<ItemModel> libraryItems = await(items.get(i));
+            if (library != null) {
+                listener.libraryFetched(library, libraryItems);
+            }
+        }
+    }
+
+    /**
+     * Fetches the items of a library.
+     *
+     * @param libraryId identifier of the library.
+     * @return the items, in the order of the item list.
+     */
+    public List<ItemModel> fetchItems(String libraryId) {
+        List<Future<ItemModel>> futures = new ArrayList<>();
+        List<String> itemIds;
+        try {
+            itemIds = client.item().list(libraryId);
+        } catch (NotFound e) {
+            return new ArrayList<>();
+        }
+        for (final String itemId : itemIds) {
+            futures.add(itemExecutor.submit(new Callable<ItemModel>() {
+                @Override
+                public ItemModel call() {
+                    try {
+                        return client.metadataCache().getItem(itemId);
+                    } catch (NotFound e) {
+                        return null;
+                    }
+                }
+            }));
+        }
+        List<ItemModel> items = new ArrayList<>(futures.size());
+        for (Future<ItemModel> future : futures) {
+            ItemModel item = await(future);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Stops the threads of this fetcher.
+     */
+    public void shutdown() {
+        libraryExecutor.shutdownNow();
+        itemExecutor.shutdownNow();
+    }
+
+    private LibraryModel getOrNull(String libraryId) {
+        try {
+            return client.metadataCache().getLibrary(libraryId);
+        } catch (NotFound e) {
+            return null;
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching the inventory", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.library.ItemModel;
+import com.vmware.content.samples.client.util.FileUtil;
+import com.vmware.content.samples.client.util.IOUtil;
+
+/**
+ * Local copy of the libraries and items of a vCenter Server instance,
+ * persisted to a compact binary file.
+ * <p>
+ * A process loads the snapshot written by a previous run, which takes a
+ * single read of the file, and seeds a {@link ChangeFeed} with it;
+ * the first poll then reports only the differences with the server instead
+ * of the whole inventory. The snapshot is itself a listener of the change
+ * feed, which keeps it up to date until it is saved again.
+ */
+public class InventorySnapshot implements ChangeFeed.Listener {
+    private static final int MAGIC = 0x434c5349; // "CLSI"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<String, LibraryEntry> libraries = new LinkedHashMap<>();
+    private final Map<String, ItemEntry> items = new LinkedHashMap<>();
+
+    /**
+     * Library as recorded in the snapshot.
+     */
+    public static class LibraryEntry {
+        private final String id;
+        private final String name;
+        private final String type;
+        private final String version;
+
+        LibraryEntry(String id, String name, String type, String version) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+            this.version = version;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Item as recorded in the snapshot.
+     */
+    public static class ItemEntry {
+        private final String id;
+        private final String libraryId;
+        private final String name;
+        private final String type;
+        private final long size;
+        private final String version;
+        private final String contentVersion;
+
+        ItemEntry(String id, String libraryId, String name, String type, long size,
+                String version, String contentVersion) {
+            this.id = id;
+            this.libraryId = libraryId;
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.version = version;
+            this.contentVersion = contentVersion;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getLibraryId() {
+            return libraryId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return size of the item in bytes, or -1 if unknown.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getContentVersion() {
+            return contentVersion;
+        }
+    }
+
+    /**
+     * Loads a snapshot from a file.
+     *
+     * @param file snapshot file.
+     * @return the snapshot, which is empty if the file does not exist or is not readable.
+     * @throws IOException
+     */
+    public static InventorySnapshot load(File file) throws IOException {
+        InventorySnapshot snapshot = new InventorySnapshot();
+        if (!file.isFile()) {
+            return snapshot;
+        }
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            // a single read rather than a mapping, which would keep the file
+            // open until collected and prevent replacing it on Windows
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read up to the end of the file
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                IOUtil.print("Ignoring inventory snapshot in unknown format " + file.getPath());
+                return snapshot;
+            }
+            int libraryCount = buffer.getInt();
+            for (int i = 0; i < libraryCount; i++) {
+                LibraryEntry library = new LibraryEntry(getString(buffer), getString(buffer),
+                        getString(buffer), getString(buffer));
+                snapshot.libraries.put(library.getId(), library);
+            }
+            int itemCount = buffer.getInt();
+            for (int i = 0; i < itemCount; i++) {
+                ItemEntry item = new ItemEntry(getString(buffer), getString(buffer),
+                        getString(buffer), getString(buffer), buffer.getLong(),
+                        getString(buffer), getString(buffer));
+                snapshot.items.put(item.getId(), item);
+            }
+        } catch (BufferUnderflowException e) {
+            IOUtil.print("Ignoring truncated inventory snapshot " + file.getPath());
+            return new InventorySnapshot();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Saves the snapshot to a file, replacing the previous one.
+     *
+     * @param file snapshot file.
+     * @throws IOException
+     */
+    public synchronized void save(File file) throws IOException {
+        FileUtil.writeAtomically(file, new FileUtil.ContentWriter() {
+            @Override
+            public void write(OutputStream stream) throws IOException {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(libraries.size());
+                for (LibraryEntry library : libraries.values()) {
+                    putString(out, library.getId());
+                    putString(out, library.getName());
+                    putString(out, library.getType());
+                    putString(out, library.getVersion());
+                }
+                out.writeInt(items.size());
+                for (ItemEntry item : items.values()) {
+                    putString(out, item.getId());
+                    putString(out, item.getLibraryId());
+                    putString(out, item.getName());
+                    putString(out, item.getType());
+                    out.writeLong(item.getSize());
+                    putString(out, item.getVersion());
+                    putString(out, item.getContentVersion());
+                }
+                out.flush();
+            }
+        });
+    }
+
+    public synchronized List<LibraryEntry> getLibraries() {
+        return new ArrayList<>(libraries.values());
+    }
+
+    public synchronized LibraryEntry getLibrary(String libraryId) {
+        return libraries.get(libraryId);
+    }
+
+    public synchronized List<ItemEntry> getItems() {
+        return new ArrayList<>(items.values());
+    }
+
+    public synchronized List<ItemEntry> getItems(String libraryId) {
+        List<ItemEntry> result = new ArrayList<>();
+        for (ItemEntry item : items.values()) {
+            if (libraryId.equals(item.getLibraryId())) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    public synchronized ItemEntry getItem(String itemId) {
+        return items.get(itemId);
+    }
+
+    public synchronized void putLibrary(LibraryModel library) {
+        String type = library.getType() == null ? null : library.getType().toString();
+        libraries.put(library.getId(),
+                new LibraryEntry(library.getId(), library.getName(), type, library.getVersion()));
+    }
+
+    public synchronized void putItem(ItemModel item) {
+        long size = item.getSize() == null ? -1 : item.getSize();
+        items.put(item.getId(), new ItemEntry(item.getId(), item.getLibraryId(), item.getName(),
+                item.getType(), size, item.getVersion(), item.getContentVersion()));
+    }
+
+    /**
+     * Removes a library with its items.
+     *
+     * @param libraryId identifier of the library.
+     */
+    public synchronized void removeLibrary(String libraryId) {
+        libraries.remove(libraryId);
+        for (Iterator<ItemEntry> iterator = items.values().iterator(); iterator.hasNext(); ) {
+            if (libraryId.equals(iterator.next().getLibraryId())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void removeItem(String itemId) {
+        items.remove(itemId);
+    }
+
+    @Override
+    public void libraryChanged(ChangeFeed.ChangeType changeType, String libraryId,
+            LibraryModel library) {
+        if (changeType == ChangeFeed.ChangeType.REMOVED) {
+            removeLibrary(libraryId);
+        } else {
+            putLibrary(library);
+        }
+    }
+
+    @Override
+    public void itemChanged(ChangeFeed.ChangeType changeType, String itemId, ItemModel item) {
+        if (changeType == ChangeFeed.ChangeType.REMOVED) {
+            removeItem(itemId);
+        } else {
+            putItem(item);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "InventorySnapshot(libraries=" + libraries.size() + ", items=" + items.size() + ")";
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.LibraryTypes;
+import com.vmware.content.TypeTypes;
+import com.vmware.content.library.ItemModel;
+import com.vmware.content.samples.client.util.ExpiringLruCache;
+
+/**
+ * Cache in front of the library, item and type services.
+ * <p>
+ * Cached models are shared between callers, which must not modify them.
+ * Entries expire after a time to live, and callers changing libraries or
+ * items must invalidate the affected entries; the helpers in
+ * {@code ClsApiHelper} do so. A model fetched while it is invalidated is
+ * not cached, as it may predate the change.
+ */
+public class MetadataCache {
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String LIBRARY = "library:";
+    private static final String LIBRARY_BY_NAME = "libraryByName:";
+    private static final String ITEM = "item:";
+    private static final String TYPES = "types";
+
+    private final ClsApiClient client;
+    private final ExpiringLruCache<String, Object> cache;
+
+    public MetadataCache(ClsApiClient client, long timeToLiveMillis, int maxEntries) {
+        this.client = client;
+        this.cache = new ExpiringLruCache<>(timeToLiveMillis, maxEntries);
+    }
+
+    public LibraryModel getLibrary(String libraryId) {
+        LibraryModel library = (LibraryModel) cache.get(LIBRARY + libraryId);
+        if (library == null) {
+            long stamp = cache.getStamp();
+            library = client.library().get(libraryId);
+            cache.put(LIBRARY + libraryId, library, stamp);
+        }
+        return library;
+    }
+
+    /**
+     * Gets the identifier of the first library which matches the given name.
+     *
+     * @param libraryName name of the library.
+     * @return identifier of the library, or {@code null} if there is none.
+     */
+    public String findLibraryByName(String libraryName) {
+        String libraryId = (String) cache.get(LIBRARY_BY_NAME + libraryName);
+        if (libraryId == null) {
+            long stamp = cache.getStamp();
+            LibraryTypes.FindSpec findSpec = new LibraryTypes.FindSpec();
+            findSpec.setName(libraryName);
+            List<String> result = client.library().find(findSpec);
+            if (result.isEmpty()) {
+                // not cached, the library may be created any time
+                return null;
+            }
+            libraryId = result.get(0);
+            cache.put(LIBRARY_BY_NAME + libraryName, libraryId, stamp);
+        }
+        return libraryId;
+    }
+
+    public ItemModel getItem(String itemId) {
+        ItemModel item = (ItemModel) cache.get(ITEM + itemId);
+        if (item == null) {
+            long stamp = cache.getStamp();
+            item = client.item().get(itemId);
+            cache.put(ITEM + itemId, item, stamp);
+        }
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<TypeTypes.Info> listTypes() {
+        List<TypeTypes.Info> types = (List<TypeTypes.Info>) cache.get(TYPES);
+        if (types == null) {
+            long stamp = cache.getStamp();
+            types = Collections.unmodifiableList(client.type().list());
+            cache.put(TYPES, types, stamp);
+        }
+        return types;
+    }
+
+    /**
+     * Invalidates a library, and the library lookups by name,
+     * after the library was created, updated or deleted.
+     *
+     * @param libraryId identifier of the library.
+     */
+    public void invalidateLibrary(String libraryId) {
+        cache.remove(LIBRARY + libraryId);
+        cache.removeIf(new ExpiringLruCache.KeyFilter<String>() {
+            @Override
+            public boolean matches(String key) {
+                return key.startsWith(LIBRARY_BY_NAME);
+            }
+        });
+    }
+
+    /**
+     * Invalidates an item after it was created, updated or deleted,
+     * or after its content changed.
+     *
+     * @param itemId identifier of the item.
+     */
+    public void invalidateItem(String itemId) {
+        cache.remove(ITEM + itemId);
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataCache(" + cache + ")";
+    }
+}
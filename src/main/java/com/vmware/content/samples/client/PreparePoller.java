@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.content.library.item.downloadsession.FileTypes.Info;
+import com.vmware.content.library.item.downloadsession.FileTypes.PrepareStatus;
+import com.vmware.content.samples.client.util.SettableFuture;
+import com.vmware.vapi.std.errors.ResourceBusy;
+import com.vmware.vapi.std.errors.ServiceUnavailable;
+import com.vmware.vapi.std.errors.TimedOut;
+
+/**
+ * Watches files of download sessions until they are prepared.
+ * <p>
+ * A single thread polls all the watched (session, file) pairs. Each file is
+ * polled quickly at first, so that small files are picked up right away, and
+ * then with an exponentially growing interval up to a cap, so that large files
+ * which take long to prepare do not flood the server with status calls.
+ * Transient failures of the status calls are retried the same way, until the
+ * prepare deadline of the file.
+ * <p>
+ * A client shares one poller between all its downloads, see
+ * {@link ClsApiClient#preparePoller()}.
+ */
+public class PreparePoller {
+    private static final long DEFAULT_INITIAL_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_MAX_INTERVAL_MILLIS = 5000;
+    private static final long DEFAULT_PREPARE_TIMEOUT_MILLIS = 60 * 60 * 1000;
+    private static final int BACKOFF_MULTIPLIER = 2;
+
+    private final ClsApiClient client;
+    private final long initialIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long prepareTimeoutMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Set<PendingPrepare> pending =
+            Collections.newSetFromMap(new ConcurrentHashMap<PendingPrepare, Boolean>());
+
+    /**
+     * Callback notified when a watched file is prepared or fails to prepare.
+     * It is invoked on the poller thread, so it should not block.
+     */
+    public interface Listener {
+        void prepared(String sessionId, Info fileInfo);
+
+        void failed(String sessionId, String fileName, Exception e);
+    }
+
+    public PreparePoller(ClsApiClient client) {
+        this(client, DEFAULT_INITIAL_INTERVAL_MILLIS, DEFAULT_MAX_INTERVAL_MILLIS,
+                DEFAULT_PREPARE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param client authenticated ClsApiClient.
+     * @param initialIntervalMillis delay before the first poll of a file.
+     * @param maxIntervalMillis cap of the interval between two polls of a file.
+     * @param prepareTimeoutMillis time after which a file still not prepared fails.
+     */
+    public PreparePoller(ClsApiClient client, long initialIntervalMillis, long maxIntervalMillis,
+            long prepareTimeoutMillis) {
+        this.client = client;
+        this.initialIntervalMillis = initialIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.prepareTimeoutMillis = prepareTimeoutMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "download-prepare-poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * Starts watching a file, which must already have been requested to be prepared.
+     *
+     * @param sessionId identifier of the download session.
+     * @param fileName name of the file in the download session.
+     * @return future holding the file info once it is prepared.
+     */
+    public Future<Info> watch(String sessionId, String fileName) {
+        return watch(sessionId, fileName, null);
+    }
+
+    /**
+     * Starts watching a file, which must already have been requested to be prepared.
+     * The listener, if any, is notified before the returned future completes.
+     *
+     * @param sessionId identifier of the download session.
+     * @param fileName name of the file in the download session.
+     * @param listener callback to notify, may be {@code null}.
+     * @return future holding the file info once it is prepared.
+     */
+    public Future<Info> watch(String sessionId, String fileName, Listener listener) {
+        PendingPrepare prepare = new PendingPrepare(sessionId, fileName, listener,
+                System.currentTimeMillis() + prepareTimeoutMillis);
+        pending.add(prepare);
+        prepare.schedule(initialIntervalMillis);
+        return prepare;
+    }
+
+    /**
+     * Stops polling; files still being watched fail.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (PendingPrepare prepare : pending) {
+            prepare.fail(new IllegalStateException("Stopped watching file " + prepare.fileName));
+        }
+    }
+
+    /**
+     * A watched file; completes itself once the file reaches a final state.
+     */
+    private class PendingPrepare extends SettableFuture<Info> implements Runnable {
+        private final String sessionId;
+        private final String fileName;
+        private final Listener listener;
+        private final long deadlineMillis;
+        private long intervalMillis;
+
+        PendingPrepare(String sessionId, String fileName, Listener listener, long deadlineMillis) {
+            this.sessionId = sessionId;
+            this.fileName = fileName;
+            this.listener = listener;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        void schedule(long delayMillis) {
+            intervalMillis = delayMillis;
+            scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                // cancelled by the waiter
+                pending.remove(this);
+                return;
+            }
+            Info fileInfo;
+            try {
+                fileInfo = client.downloadSessionFile().get(sessionId, fileName);
+            } catch (ServiceUnavailable | TimedOut | ResourceBusy e) {
+                retryOrFail(e);
+                return;
+            } catch (Exception e) {
+                fail(e);
+                return;
+            }
+            if (fileInfo.getStatus() == PrepareStatus.PREPARED) {
+                pending.remove(this);
+                try {
+                    if (listener != null) {
+                        listener.prepared(sessionId, fileInfo);
+                    }
+                } catch (RuntimeException e) {
+                    setException(e);
+                    return;
+                }
+                set(fileInfo);
+            } else if (fileInfo.getStatus() == PrepareStatus.ERROR) {
+                fail(new RuntimeException("Cannot prepare file " + fileName + " for download"));
+            } else {
+                retryOrFail(new RuntimeException("File " + fileName + " not prepared after "
+                        + prepareTimeoutMillis + " ms"));
+            }
+        }
+
+        /**
+         * Polls again later, unless the deadline has passed.
+         *
+         * @param failure failure to report if the deadline has passed.
+         */
+        private void retryOrFail(Exception failure) {
+            long nextIntervalMillis = Math.min(intervalMillis * BACKOFF_MULTIPLIER, maxIntervalMillis);
+            if (System.currentTimeMillis() + nextIntervalMillis > deadlineMillis) {
+                fail(failure);
+            } else {
+                schedule(nextIntervalMillis);
+            }
+        }
+
+        private void fail(Exception e) {
+            if (!pending.remove(this)) {
+                // already completed, or failed by a concurrent shutdown
+                return;
+            }
+            if (listener != null) {
+                listener.failed(sessionId, fileName, e);
+            }
+            setException(e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.vmware.content.samples.client.util.FileUtil;
+import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.vapi.saml.SamlToken;
+
+/**
+ * Encrypted file caching the outcome of a login: the vAPI URL, the
+ * management node and the SAML bearer token with its expiry.
+ * <p>
+ * A new process reusing the cache logs in to vAPI directly with the cached
+ * token, skipping the SSO login, the lookup service queries and the reverse
+ * DNS lookup, until the token gets close to its expiry.
+ * <p>
+ * The file is encrypted and authenticated with a key derived from the SSO
+ * password, so only a caller knowing the password can use the cached token.
+ */
+public class SessionCache {
+    /**
+     * Time before the expiry of the token after which it is no longer reused.
+     */
+    public static final long DEFAULT_RENEWAL_MARGIN_MILLIS = 5 * 60 * 1000;
+
+    private static final int MAGIC = 0x434c5353; // "CLSS"
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 16;
+    private static final int KEY_ITERATIONS = 10000;
+
+    private static final String HOSTNAME = "hostname";
+    private static final String USERNAME = "username";
+    private static final String VAPI_URL = "vapiUrl";
+    private static final String MANAGEMENT_NODE_ID = "managementNodeId";
+    private static final String EXPIRATION_TIME = "expirationTime";
+    private static final String TOKEN = "token";
+
+    private final File file;
+    private final String hostname;
+    private final String username;
+    private final String password;
+    private final long renewalMarginMillis;
+
+    /**
+     * Cached login.
+     */
+    public static class Entry {
+        private final String vApiUrl;
+        private final String managementNodeId;
+        private final String tokenXml;
+        private final long expirationTime;
+
+        Entry(String vApiUrl, String managementNodeId, String tokenXml, long expirationTime) {
+            this.vApiUrl = vApiUrl;
+            this.managementNodeId = managementNodeId;
+            this.tokenXml = tokenXml;
+            this.expirationTime = expirationTime;
+        }
+
+        public String getVapiUrl() {
+            return vApiUrl;
+        }
+
+        public String getManagementNodeId() {
+            return managementNodeId;
+        }
+
+        public String getTokenXml() {
+            return tokenXml;
+        }
+
+        public long getExpirationTime() {
+            return expirationTime;
+        }
+    }
+
+    public SessionCache(File file, String hostname, String username, String password) {
+        this(file, hostname, username, password, DEFAULT_RENEWAL_MARGIN_MILLIS);
+    }
+
+    /**
+     * @param file cache file.
+     * @param hostname hostname/IP of the vCenter SSO server, as given to the client.
+     * @param username SSO username.
+     * @param password SSO password, from which the encryption key is derived.
+     * @param renewalMarginMillis time before the expiry of the token after which
+     *                            it is no longer reused, in milliseconds.
+     */
+    public SessionCache(File file, String hostname, String username, String password,
+            long renewalMarginMillis) {
+        this.file = file;
+        this.hostname = hostname;
+        this.username = username;
+        this.password = password;
+        this.renewalMarginMillis = renewalMarginMillis;
+    }
+
+    /**
+     * Loads the cached login.
+     *
+     * @return the cached login, or {@code null} if there is none for this server
+     *         and user, if its token is close to expiry, or if the file cannot be read.
+     */
+    public synchronized Entry load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            byte[] salt = readBytes(in);
+            byte[] iv = readBytes(in);
+            byte[] cipherText = readBytes(in);
+            byte[] mac = readBytes(in);
+            byte[][] keys = deriveKeys(salt);
+            if (!MessageDigest.isEqual(mac, mac(keys[1], iv, cipherText))) {
+                // wrong password or tampered file
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keys[0], "AES"),
+                    new IvParameterSpec(iv));
+            properties = new Properties();
+            properties.load(new ByteArrayInputStream(cipher.doFinal(cipherText)));
+        } catch (IOException | GeneralSecurityException e) {
+            IOUtil.print("Ignoring unreadable session cache " + file.getPath());
+            return null;
+        }
+        if (!hostname.equals(properties.getProperty(HOSTNAME))
+                || !username.equals(properties.getProperty(USERNAME))) {
+            return null;
+        }
+        long expirationTime = Long.parseLong(properties.getProperty(EXPIRATION_TIME, "0"));
+        if (expirationTime - renewalMarginMillis <= System.currentTimeMillis()) {
+            return null;
+        }
+        return new Entry(properties.getProperty(VAPI_URL),
+                properties.getProperty(MANAGEMENT_NODE_ID), properties.getProperty(TOKEN),
+                expirationTime);
+    }
+
+    /**
+     * Caches a login, replacing the previous one.
+     *
+     * @param vApiUrl URL of the vAPI endpoint.
+     * @param managementNodeId identifier of the management node.
+     * @param token SAML bearer token used for the vAPI login.
+     * @throws IOException
+     */
+    public void store(String vApiUrl, String managementNodeId, SamlToken token)
+            throws IOException {
+        store(vApiUrl, managementNodeId, token.toXml(), token.getExpirationTime().getTime());
+    }
+
+    synchronized void store(String vApiUrl, String managementNodeId, String tokenXml,
+            long expirationTime) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(HOSTNAME, hostname);
+        properties.setProperty(USERNAME, username);
+        properties.setProperty(VAPI_URL, vApiUrl);
+        properties.setProperty(MANAGEMENT_NODE_ID, managementNodeId);
+        properties.setProperty(EXPIRATION_TIME, Long.toString(expirationTime));
+        properties.setProperty(TOKEN, tokenXml);
+        ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+        properties.store(plainText, null);
+
+        SecureRandom random = new SecureRandom();
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(salt);
+        random.nextBytes(iv);
+        byte[] cipherText;
+        byte[] mac;
+        try {
+            byte[][] keys = deriveKeys(salt);
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keys[0], "AES"),
+                    new IvParameterSpec(iv));
+            cipherText = cipher.doFinal(plainText.toByteArray());
+            mac = mac(keys[1], iv, cipherText);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot encrypt the session cache", e);
+        }
+
+        // holds a bearer token, so readable by the owner only
+        final byte[] encryptedSalt = salt;
+        final byte[] encryptedIv = iv;
+        final byte[] encryptedText = cipherText;
+        final byte[] encryptedMac = mac;
+        FileUtil.writeAtomically(file, new FileUtil.ContentWriter() {
+            @Override
+            public void write(OutputStream stream) throws IOException {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                writeBytes(out, encryptedSalt);
+                writeBytes(out, encryptedIv);
+                writeBytes(out, encryptedText);
+                writeBytes(out, encryptedMac);
+                out.flush();
+            }
+        }, true);
+    }
+
+    /**
+     * Removes the cached login, after it was rejected by the server.
+     */
+    public synchronized void clear() {
+        file.delete();
+    }
+
+    /**
+     * Derives the encryption key and the authentication key from the password.
+     */
+    private byte[][] deriveKeys(byte[] salt) throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+        byte[] keyMaterial = factory.generateSecret(
+                new PBEKeySpec(password.toCharArray(), salt, KEY_ITERATIONS, 384)).getEncoded();
+        return new byte[][] {
+                Arrays.copyOfRange(keyMaterial, 0, 16), Arrays.copyOfRange(keyMaterial, 16, 48)};
+    }
+
+    private static byte[] mac(byte[] key, byte[] iv, byte[] cipherText)
+            throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        mac.update(iv);
+        return mac.doFinal(cipherText);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("Truncated session cache");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import com.vmware.content.samples.client.util.ExpiringLruCache;
+import com.vmware.content.samples.client.util.IOUtil;
+import com.vmware.vcloud.suite.samples.common.PlatformServiceController;
+import com.vmware.vcloud.suite.samples.common.ServiceManager;
+import com.vmware.vcloud.suite.samples.common.ServiceManagerFactory;
+import com.vmware.vcloud.suite.samples.vim.helpers.VimUtil;
+import com.vmware.vim25.DynamicProperty;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.NotAuthenticated;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+
+/**
+ * Connection to the VIM API of the vCenter Server instance of a client,
+ * established on first use and shared by the threads using the client.
+ * <p>
+ * A call failing on the connection, or on a session the server no longer
+ * knows, is retried once on a new connection, which replaces the failed one
+ * for all the threads; other failures are the call's own and are not
+ * retried. The lookups of the clusters and of their root resource pools are
+ * cached.
+ */
+public class VimConnection {
+    public static final long DEFAULT_LOOKUP_TIME_TO_LIVE_MILLIS = 10 * 60 * 1000;
+    private static final int MAX_CACHED_LOOKUPS = 1000;
+
+    private final ClsApiClient client;
+    // cluster name -> cluster
+    private final ExpiringLruCache<String, ManagedObjectReference> clusters;
+    // cluster id -> root resource pool of the cluster
+    private final ExpiringLruCache<String, ManagedObjectReference> resourcePools;
+    private ServiceManager serviceManager;
+
+    /**
+     * A call to the VIM API.
+     *
+     * @param <T> type of the result of the call.
+     */
+    public interface VimCall<T> {
+        T call(ServiceManager serviceManager) throws Exception;
+    }
+
+    VimConnection(ClsApiClient client) {
+        this.client = client;
+        this.clusters = new ExpiringLruCache<>(DEFAULT_LOOKUP_TIME_TO_LIVE_MILLIS, MAX_CACHED_LOOKUPS);
+        this.resourcePools = new ExpiringLruCache<>(DEFAULT_LOOKUP_TIME_TO_LIVE_MILLIS, MAX_CACHED_LOOKUPS);
+    }
+
+    /**
+     * Gets the service manager of the connection, connecting if needed.
+     *
+     * @return the service manager.
+     */
+    public ServiceManager getServiceManager() {
+        synchronized (this) {
+            if (serviceManager != null) {
+                return serviceManager;
+            }
+        }
+        // taken from the client before locking this connection, as the client
+        // locks itself then this connection when logging out
+        PlatformServiceController platformServiceController = client.getPlatformServiceController();
+        String managementNodeId = client.getManagementNodeId();
+        synchronized (this) {
+            if (serviceManager == null) {
+                try {
+                    serviceManager = ServiceManagerFactory.getServiceManager(
+                            platformServiceController, managementNodeId);
+                } catch (Exception e) {
+                    throw new RuntimeException("Cannot connect to VMware APIs of " +
+                            "the vCenter Server instance", e);
+                }
+            }
+            return serviceManager;
+        }
+    }
+
+    /**
+     * Runs a call, retrying it once on a new connection if it fails on the
+     * connection or its session. Calls must therefore be safe to repeat, as
+     * lookups are. Other runtime exceptions are rethrown unchanged, other
+     * checked exceptions wrapped.
+     *
+     * @param call the call.
+     * @return the result of the call.
+     */
+    public <T> T execute(VimCall<T> call) {
+        ServiceManager current = getServiceManager();
+        try {
+            return call.call(current);
+        } catch (RuntimeException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
+            IOUtil.print("VIM call failed, reconnecting: " + e.getMessage());
+            reconnect(current);
+        } catch (Exception e) {
+            if (!isConnectionFailure(e)) {
+                throw new RuntimeException("VIM call failed", e);
+            }
+            IOUtil.print("VIM call failed, reconnecting: " + e.getMessage());
+            reconnect(current);
+        }
+        try {
+            return call.call(getServiceManager());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("VIM call failed after reconnecting", e);
+        }
+    }
+
+    /**
+     * Gets a cluster by name.
+     *
+     * @param clusterName name of the cluster.
+     * @return the cluster.
+     */
+    public ManagedObjectReference getCluster(final String clusterName) {
+        ManagedObjectReference cluster = clusters.get(clusterName);
+        if (cluster == null) {
+            cluster = execute(new VimCall<ManagedObjectReference>() {
+                @Override
+                public ManagedObjectReference call(ServiceManager serviceManager) throws Exception {
+                    return VimUtil.getCluster(serviceManager.getVimPortType(),
+                            serviceManager.getServiceContent(), clusterName);
+                }
+            });
+            if (cluster == null) {
+                throw new RuntimeException("Cannot get managed object ID for the given cluster "
+                        + clusterName);
+            }
+            clusters.put(clusterName, cluster);
+        }
+        return cluster;
+    }
+
+    /**
+     * Gets the root resource pool of a cluster.
+     *
+     * @param clusterName name of the cluster.
+     * @return the root resource pool.
+     */
+    public ManagedObjectReference getRootResourcePool(String clusterName) {
+        final ManagedObjectReference cluster = getCluster(clusterName);
+        ManagedObjectReference resourcePool = resourcePools.get(cluster.getValue());
+        if (resourcePool == null) {
+            List<DynamicProperty> dynamicProps = execute(new VimCall<List<DynamicProperty>>() {
+                @Override
+                public List<DynamicProperty> call(ServiceManager serviceManager) throws Exception {
+                    return VimUtil.getProperties(serviceManager.getVimPortType(),
+                            serviceManager.getServiceContent(), cluster, cluster.getType(),
+                            Arrays.asList("resourcePool"));
+                }
+            });
+            if (dynamicProps == null || dynamicProps.isEmpty()) {
+                throw new RuntimeException("Cannot find root resource pool for the given cluster "
+                        + clusterName);
+            }
+            resourcePool = (ManagedObjectReference) dynamicProps.get(0).getVal();
+            resourcePools.put(cluster.getValue(), resourcePool);
+        }
+        return resourcePool;
+    }
+
+    /**
+     * Forgets the cached lookups, after clusters were renamed or reconfigured.
+     */
+    public void invalidateLookups() {
+        clusters.clear();
+        resourcePools.clear();
+    }
+
+    /**
+     * Disconnects, if connected. The next call connects again.
+     */
+    public synchronized void disconnect() {
+        if (serviceManager != null) {
+            disconnectQuietly(serviceManager);
+            serviceManager = null;
+        }
+    }
+
+    /**
+     * Drops a failed connection, unless another thread already replaced it.
+     *
+     * @param failed the connection of the failed call.
+     */
+    private synchronized void reconnect(ServiceManager failed) {
+        if (serviceManager == failed) {
+            disconnectQuietly(failed);
+            serviceManager = null;
+        }
+    }
+
+    /**
+     * Tells whether a call failed on the connection, or because the server no
+     * longer knows its session, rather than in the call itself.
+     */
+    private static boolean isConnectionFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SOAPFaultException) {
+                // a fault the server returned for the call
+                return false;
+            } else if (cause instanceof WebServiceException) {
+                return true;
+            } else if (cause instanceof RuntimeFaultFaultMsg) {
+                return ((RuntimeFaultFaultMsg) cause).getFaultInfo() instanceof NotAuthenticated;
+            }
+        }
+        return false;
+    }
+
+    private static void disconnectQuietly(ServiceManager serviceManager) {
+        try {
+            serviceManager.disconnect();
+        } catch (RuntimeException e) {
+            // the connection is dropped anyway
+        }
+    }
+}
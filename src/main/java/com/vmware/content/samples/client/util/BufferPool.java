@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of large byte buffers used to copy content during transfers.
+ * <p>
+ * Large buffers keep the number of read and write calls low on multi-GB
+ * files; pooling them avoids allocating a new one for every transfer.
+ * A buffer must be released once the transfer is done.
+ */
+public class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 512 * 1024;
+    private static final int DEFAULT_MAX_POOLED_BUFFERS = 32;
+
+    private static volatile BufferPool defaultPool =
+            new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * @param bufferSize size of the buffers, in bytes.
+     * @param maxPooledBuffers number of released buffers kept for reuse;
+     *                         more buffers can be acquired, but the extra
+     *                         ones are dropped when released.
+     */
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    /**
+     * @return the pool used by the transfers in {@link HttpUtil}.
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Replaces the pool used by the transfers in {@link HttpUtil},
+     * for example to use a different buffer size.
+     *
+     * @param pool pool to use.
+     */
+    public static void setDefault(BufferPool pool) {
+        defaultPool = pool;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return a pooled buffer, or a new one if none is available.
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Gives a buffer back to the pool.
+     *
+     * @param buffer buffer obtained from {@link #acquire()}.
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
+
+/**
+ * Read-ahead of the checksums of files uploaded in order, {@code distance}
+ * at a time.
+ * <p>
+ * Starting the upload of a file starts the checksum of the file
+ * {@code distance} places behind it, the next one to be uploaded once an
+ * upload finishes, so that at most one checksum runs ahead per upload.
+ * When the upload of that file starts, its checksum is used if done, and
+ * waited for if running, as its file is being read anyway. A checksum not
+ * started yet never runs: the file is digested while it is sent instead.
+ * Either way, each file is read once.
+ * <p>
+ * Running checksums are never interrupted, as that would close the channel
+ * they read.
+ */
+public class ChecksumReadAhead {
+    private static final Pending CLAIMED = new Pending();
+
+    private final ExecutorService executor;
+    private final List<? extends Callable<ChecksumInfo>> checksums;
+    private final int distance;
+    private final AtomicReferenceArray<Pending> pending;
+
+    /**
+     * A checksum queued ahead, which runs only if its upload has not claimed it yet.
+     */
+    private static class Pending {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int SKIPPED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final Future<ChecksumInfo> future;
+
+        Pending() {
+            this.future = null;
+        }
+
+        Pending(ExecutorService executor, final Callable<ChecksumInfo> checksum) {
+            this.future = executor.submit(new Callable<ChecksumInfo>() {
+                @Override
+                public ChecksumInfo call() throws Exception {
+                    if (!state.compareAndSet(QUEUED, RUNNING)) {
+                        return null;
+                    }
+                    return checksum.call();
+                }
+            });
+        }
+
+        /**
+         * @return the checksum, or {@code null} if it had not started.
+         */
+        ChecksumInfo claim() throws IOException, InterruptedException {
+            if (state.compareAndSet(QUEUED, SKIPPED)) {
+                future.cancel(false);
+                return null;
+            }
+            return ChecksumUtil.getChecksum(future);
+        }
+
+        void skip() {
+            if (state.compareAndSet(QUEUED, SKIPPED)) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @param executor executor of the checksums.
+     * @param checksums checksum tasks of the files, in upload order; a file
+     *                  with a {@code null} task is not checksummed ahead.
+     * @param distance number of files uploaded at a time.
+     */
+    public ChecksumReadAhead(ExecutorService executor, List<? extends Callable<ChecksumInfo>> checksums,
+            int distance) {
+        this.executor = executor;
+        this.checksums = checksums;
+        this.distance = distance;
+        this.pending = new AtomicReferenceArray<>(checksums.size());
+    }
+
+    /**
+     * Starts the upload of a file: queues the checksum of the file {@code distance}
+     * places behind it, and gets the checksum of the file.
+     *
+     * @param index index of the file.
+     * @return the checksum of the file, or {@code null} if it was not computed ahead.
+     * @throws IOException if the file could not be read.
+     * @throws InterruptedException
+     */
+    public ChecksumInfo startUpload(int index) throws IOException, InterruptedException {
+        int next = index + distance;
+        if (next < checksums.size() && checksums.get(next) != null) {
+            Pending ahead = new Pending(executor, checksums.get(next));
+            if (!pending.compareAndSet(next, null, ahead)) {
+                // its upload started first
+                ahead.skip();
+            }
+        }
+        Pending own = pending.getAndSet(index, CLAIMED);
+        return own == null || own == CLAIMED ? null : own.claim();
+    }
+
+    /**
+     * Skips the checksums not started yet, once the uploads are abandoned.
+     */
+    public void cancel() {
+        for (int i = 0; i < pending.length(); i++) {
+            Pending ahead = pending.getAndSet(i, CLAIMED);
+            if (ahead != null && ahead != CLAIMED) {
+                ahead.skip();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.vmware.content.library.item.FileTypes.ChecksumAlgorithm;
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
+
+/**
+ * Helper class to compute checksums of local files, in the form
+ * expected by the Content Library API.
+ * <p>
+ * A file spec added to an update session must carry its checksum before the
+ * upload endpoint for the file exists, so the checksum of a local file is
+ * computed ahead of its upload, in parallel with other uploads, see
+ * {@link ChecksumReadAhead}.
+ * <p>
+ * When the checksum was not computed ahead, the file is added without it
+ * and digested while it is sent instead, and the digest is compared with the
+ * checksum the server computed for the received bytes, see
+ * {@link #verify(String, ChecksumInfo, ChecksumInfo)}.
+ */
+public class ChecksumUtil {
+    /**
+     * Algorithm used for the checksums of uploaded files.
+     */
+    public static final ChecksumAlgorithm DEFAULT_ALGORITHM = ChecksumAlgorithm.SHA1;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ChecksumUtil() {
+    }
+
+    /**
+     * Computes the checksum of a whole file.
+     *
+     * @param file local file.
+     * @param algorithm checksum algorithm.
+     * @return checksum info to set in a file spec.
+     * @throws IOException
+     */
+    public static ChecksumInfo checksum(File file, ChecksumAlgorithm algorithm) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            return checksum(channel, 0, channel.size(), algorithm);
+        }
+    }
+
+    /**
+     * Computes the checksum of a slice of a file.
+     *
+     * @param channel channel of the file, which is read with positional reads.
+     * @param offset position of the first byte of the slice.
+     * @param length number of bytes in the slice.
+     * @param algorithm checksum algorithm.
+     * @return checksum info to set in a file spec.
+     * @throws IOException
+     */
+    public static ChecksumInfo checksum(FileChannel channel, long offset, long length,
+            ChecksumAlgorithm algorithm) throws IOException {
+        MessageDigest digest = newMessageDigest(algorithm);
+        BufferPool bufferPool = BufferPool.getDefault();
+        byte[] buffer = bufferPool.acquire();
+        try {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                ByteBuffer byteBuffer =
+                        ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+                int read = channel.read(byteBuffer, position);
+                if (read == -1) {
+                    throw new EOFException("File ended before the end of the checksummed range");
+                }
+                digest.update(buffer, 0, read);
+                position += read;
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return toChecksumInfo(digest, algorithm);
+    }
+
+    /**
+     * Creates a task computing the checksum of a whole file, to submit to an executor.
+     *
+     * @param file local file.
+     * @param algorithm checksum algorithm.
+     * @return the task.
+     */
+    public static Callable<ChecksumInfo> checksumTask(final File file, final ChecksumAlgorithm algorithm) {
+        return new Callable<ChecksumInfo>() {
+            @Override
+            public ChecksumInfo call() throws IOException {
+                return checksum(file, algorithm);
+            }
+        };
+    }
+
+    /**
+     * Creates a task computing the checksum of a slice of a file, to submit to an executor.
+     *
+     * @param channel channel of the file.
+     * @param offset position of the first byte of the slice.
+     * @param length number of bytes in the slice.
+     * @param algorithm checksum algorithm.
+     * @return the task.
+     */
+    public static Callable<ChecksumInfo> checksumTask(final FileChannel channel, final long offset,
+            final long length, final ChecksumAlgorithm algorithm) {
+        return new Callable<ChecksumInfo>() {
+            @Override
+            public ChecksumInfo call() throws IOException {
+                return checksum(channel, offset, length, algorithm);
+            }
+        };
+    }
+
+    /**
+     * Checks that the checksum the server computed for an uploaded file
+     * matches the digest of the bytes sent. A server checksum which is not
+     * available, or uses another algorithm, cannot be compared and is ignored.
+     *
+     * @param fileName name of the uploaded file.
+     * @param sent checksum of the bytes sent.
+     * @param received checksum reported by the server, may be {@code null}.
+     * @throws IOException if the checksums differ.
+     */
+    public static void verify(String fileName, ChecksumInfo sent, ChecksumInfo received)
+            throws IOException {
+        if (received == null || received.getChecksum() == null
+                || received.getAlgorithm() != sent.getAlgorithm()) {
+            return;
+        }
+        if (!received.getChecksum().equalsIgnoreCase(sent.getChecksum())) {
+            throw new IOException("Checksum mismatch for uploaded file " + fileName + ": sent "
+                    + sent.getChecksum() + ", received " + received.getChecksum());
+        }
+    }
+
+    /**
+     * Waits for a checksum computed by a task from this class.
+     *
+     * @param checksum future result of the task.
+     * @return checksum info to set in a file spec.
+     * @throws IOException if the file could not be read.
+     * @throws InterruptedException
+     */
+    public static ChecksumInfo getChecksum(Future<ChecksumInfo> checksum)
+            throws IOException, InterruptedException {
+        try {
+            return checksum.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Creates a digest to compute a checksum incrementally, for example while sending a file.
+     *
+     * @param algorithm checksum algorithm.
+     * @return the digest.
+     */
+    public static MessageDigest newMessageDigest(ChecksumAlgorithm algorithm) {
+        String name;
+        if (algorithm == ChecksumAlgorithm.SHA1) {
+            name = "SHA-1";
+        } else if (algorithm == ChecksumAlgorithm.MD5) {
+            name = "MD5";
+        } else if (algorithm == ChecksumAlgorithm.SHA256) {
+            name = "SHA-256";
+        } else if (algorithm == ChecksumAlgorithm.SHA512) {
+            name = "SHA-512";
+        } else {
+            throw new IllegalArgumentException("Unsupported checksum algorithm " + algorithm);
+        }
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Checksum algorithm " + name + " is not available", e);
+        }
+    }
+
+    /**
+     * Completes a digest created by {@link #newMessageDigest(ChecksumAlgorithm)}.
+     *
+     * @param digest the digest, which is reset.
+     * @param algorithm algorithm of the digest.
+     * @return checksum info of the digested bytes.
+     */
+    public static ChecksumInfo toChecksumInfo(MessageDigest digest, ChecksumAlgorithm algorithm) {
+        ChecksumInfo checksumInfo = new ChecksumInfo();
+        checksumInfo.setAlgorithm(algorithm);
+        checksumInfo.setChecksum(toHex(digest.digest()));
+        return checksumInfo;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
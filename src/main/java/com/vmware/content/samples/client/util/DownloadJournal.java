@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Checkpoint journal of a download in progress, kept next to the target file.
+ * <p>
+ * It records the byte ranges already written to the target file, together
+ * with the content version of the item and the name of the file in the
+ * download session, so that an interrupted download of the same content
+ * can fetch only the missing ranges.
+ * <p>
+ * Ranges are recorded in memory as they are written, and saved at
+ * checkpoints, after the target file is forced to the storage: the saved
+ * journal never lists a range whose data could still be lost in a crash.
+ */
+class DownloadJournal {
+    private static final String SUFFIX = ".journal";
+    private static final String KEY_CONTENT_VERSION = "contentVersion";
+    private static final String KEY_FILE_NAME = "fileName";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_COMPLETED = "completed";
+    private static final long CHECKPOINT_INTERVAL_NANOS = 5L * 1000 * 1000 * 1000;
+
+    private final File target;
+    private final File journalFile;
+    private final String contentVersion;
+    private final String fileName;
+    private long length;
+    // first byte -> last byte (exclusive) of the completed ranges, kept merged
+    private final TreeMap<Long, Long> completed = new TreeMap<>();
+    private long lastCheckpointNanos;
+    private boolean checkpointing;
+
+    DownloadJournal(File target, String contentVersion, String fileName) {
+        this.target = target;
+        this.journalFile = new File(target.getPath() + SUFFIX);
+        this.contentVersion = contentVersion;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Loads the journal for a download of {@code length} bytes. A journal left
+     * behind by a download of other content is discarded.
+     *
+     * @return the number of bytes already downloaded.
+     */
+    synchronized long open(long length) throws IOException {
+        this.length = length;
+        completed.clear();
+        if (journalFile.isFile() && target.isFile() && target.length() == length) {
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(journalFile)) {
+                properties.load(in);
+            }
+            if (contentVersion.equals(properties.getProperty(KEY_CONTENT_VERSION))
+                    && fileName.equals(properties.getProperty(KEY_FILE_NAME))
+                    && String.valueOf(length).equals(properties.getProperty(KEY_LENGTH))) {
+                parseRanges(properties.getProperty(KEY_COMPLETED, ""));
+            }
+        }
+        save(formatRanges());
+        lastCheckpointNanos = System.nanoTime();
+        long done = 0;
+        for (Map.Entry<Long, Long> range : completed.entrySet()) {
+            done += range.getValue() - range.getKey();
+        }
+        return done;
+    }
+
+    /**
+     * Gets the ranges which are still to be downloaded.
+     *
+     * @return list of {first byte, last byte (exclusive)} pairs.
+     */
+    synchronized List<long[]> getMissingRanges() {
+        List<long[]> missing = new ArrayList<>();
+        long position = 0;
+        for (Map.Entry<Long, Long> range : completed.entrySet()) {
+            if (range.getKey() > position) {
+                missing.add(new long[] {position, range.getKey()});
+            }
+            position = range.getValue();
+        }
+        if (position < length) {
+            missing.add(new long[] {position, length});
+        }
+        return missing;
+    }
+
+    /**
+     * Records a range as written to the target file. The range is saved at
+     * the next checkpoint.
+     *
+     * @param first first byte of the range.
+     * @param end last byte of the range (exclusive).
+     */
+    synchronized void markCompleted(long first, long end) {
+        if (end <= first) {
+            return;
+        }
+        // merge with the overlapping and adjacent ranges
+        Map.Entry<Long, Long> before = completed.floorEntry(first);
+        if (before != null && before.getValue() >= first) {
+            first = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> after;
+        while ((after = completed.ceilingEntry(first)) != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            completed.remove(after.getKey());
+        }
+        completed.put(first, end);
+    }
+
+    /**
+     * Saves the recorded ranges, unless the last checkpoint is recent or
+     * another thread is saving them; does not wait in either case.
+     *
+     * @param channel channel of the target file, forced before saving.
+     */
+    void checkpointIfDue(FileChannel channel) throws IOException {
+        checkpoint(channel, false);
+    }
+
+    /**
+     * Saves the recorded ranges, unless another thread is saving them.
+     *
+     * @param channel channel of the target file, forced before saving.
+     */
+    void checkpoint(FileChannel channel) throws IOException {
+        checkpoint(channel, true);
+    }
+
+    private void checkpoint(FileChannel channel, boolean force) throws IOException {
+        String ranges;
+        synchronized (this) {
+            if (checkpointing
+                    || !force && System.nanoTime() - lastCheckpointNanos < CHECKPOINT_INTERVAL_NANOS) {
+                return;
+            }
+            checkpointing = true;
+            // the ranges recorded so far were written before the target is forced
+            ranges = formatRanges();
+        }
+        try {
+            channel.force(false);
+            save(ranges);
+        } finally {
+            synchronized (this) {
+                checkpointing = false;
+                lastCheckpointNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Removes the journal once the download has finished.
+     */
+    synchronized void delete() {
+        if (journalFile.exists() && !journalFile.delete()) {
+            IOUtil.print("Cannot delete download journal " + journalFile.getPath());
+        }
+    }
+
+    private void parseRanges(String value) {
+        for (String range : value.split(",")) {
+            int dash = range.indexOf('-');
+            if (dash > 0) {
+                completed.put(Long.parseLong(range.substring(0, dash).trim()),
+                        Long.parseLong(range.substring(dash + 1).trim()));
+            }
+        }
+    }
+
+    private String formatRanges() {
+        StringBuilder ranges = new StringBuilder();
+        for (Map.Entry<Long, Long> range : completed.entrySet()) {
+            if (ranges.length() > 0) {
+                ranges.append(',');
+            }
+            ranges.append(range.getKey()).append('-').append(range.getValue());
+        }
+        return ranges.toString();
+    }
+
+    private void save(String ranges) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_CONTENT_VERSION, contentVersion);
+        properties.setProperty(KEY_FILE_NAME, fileName);
+        properties.setProperty(KEY_LENGTH, String.valueOf(length));
+        properties.setProperty(KEY_COMPLETED, ranges);
+        FileUtil.writeAtomically(journalFile, new FileUtil.ContentWriter() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                properties.store(out, "Download checkpoint journal");
+            }
+        });
+    }
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe cache whose entries expire after a fixed time to live,
+ * holding at most a given number of entries; the least recently used
+ * entry is evicted to make room for a new one.
+ * <p>
+ * A value loaded while its key is invalidated must not be cached, as it
+ * may predate the change the invalidation is for: loaders take a stamp
+ * with {@link #getStamp()} before loading, and cache the value with
+ * {@link #put(Object, Object, long)}, which drops it if the key was
+ * invalidated since.
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+public class ExpiringLruCache<K, V> {
+    private final long timeToLiveMillis;
+    private final LruMap<K, Entry<V>> entries;
+
+    private long hits;
+    private long misses;
+
+    // count of the invalidations, which stamps them
+    private long invalidations;
+    // key -> stamp of its last invalidation, eldest first, at most maxEntries
+    private final Map<K, Long> invalidatedAt = new LinkedHashMap<>();
+    // every key counts as invalidated at this stamp, the keys not in invalidatedAt included
+    private long invalidatedAll;
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Map in access order, which evicts the least recently used entry beyond a size.
+     */
+    private static class LruMap<K, E> extends LinkedHashMap<K, E> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+        private long evictions;
+
+        LruMap(int maxEntries) {
+            // access order makes the eldest entry the least recently used one
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, E> eldest) {
+            if (size() > maxEntries) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param timeToLiveMillis time after which an entry expires, in milliseconds.
+     * @param maxEntries maximum number of entries.
+     */
+    public ExpiringLruCache(long timeToLiveMillis, int maxEntries) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.entries = new LruMap<>(maxEntries);
+    }
+
+    /**
+     * @return the value cached for the key, or {@code null} if there is none or it expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            hits++;
+            return entry.value;
+        }
+        if (entry != null) {
+            entries.remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + timeToLiveMillis));
+    }
+
+    /**
+     * @return the stamp to cache a value loaded from now on with, see
+     *         {@link #put(Object, Object, long)}.
+     */
+    public synchronized long getStamp() {
+        return invalidations;
+    }
+
+    /**
+     * Caches a value, unless its key was invalidated since the value started loading.
+     *
+     * @param stamp stamp taken with {@link #getStamp()} before loading the value.
+     * @return whether the value was cached.
+     */
+    public synchronized boolean put(K key, V value, long stamp) {
+        Long keyInvalidatedAt = invalidatedAt.get(key);
+        if (stamp < invalidatedAll || keyInvalidatedAt != null && stamp < keyInvalidatedAt) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+        invalidations++;
+        // moved last, the keys stay in stamp order
+        invalidatedAt.remove(key);
+        invalidatedAt.put(key, invalidations);
+        if (invalidatedAt.size() > entries.maxEntries) {
+            // the eldest stamp is forgotten, all the keys get it
+            Iterator<Long> eldest = invalidatedAt.values().iterator();
+            invalidatedAll = eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        invalidateAll();
+    }
+
+    /**
+     * Removes the entries whose key matches a condition.
+     *
+     * @param filter condition on the keys.
+     */
+    public synchronized void removeIf(KeyFilter<K> filter) {
+        for (Iterator<K> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (filter.matches(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        // the keys of the values being loaded are not known, drop them all
+        invalidateAll();
+    }
+
+    private void invalidateAll() {
+        invalidations++;
+        invalidatedAll = invalidations;
+        invalidatedAt.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return entries.evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "entries=" + entries.size() + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + entries.evictions;
+    }
+
+    /**
+     * Condition on the keys of a cache.
+     *
+     * @param <K> type of the keys.
+     */
+    public interface KeyFilter<K> {
+        boolean matches(K key);
+    }
+}
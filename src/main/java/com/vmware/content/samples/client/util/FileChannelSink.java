@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * Writes downloaded content into files through {@link FileChannel}s.
+ * <p>
+ * Content is gathered in large buffers from the default {@link BufferPool}
+ * and written with few positional writes. Files are preallocated to the known
+ * content length and synced to disk once, after the last byte is written.
+ */
+final class FileChannelSink {
+    private FileChannelSink() {
+    }
+
+    /**
+     * Writes the whole content of an entity to a file, replacing its content.
+     *
+     * @param entity entity to write.
+     * @param file file to write to.
+     * @throws IOException
+     */
+    static void writeEntity(HttpEntity entity, File file) throws IOException {
+        long length = entity.getContentLength();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             InputStream in = entity.getContent()) {
+            randomAccessFile.setLength(Math.max(length, 0));
+            FileChannel channel = randomAccessFile.getChannel();
+            long written = write(in, channel, 0, length >= 0 ? length : Long.MAX_VALUE);
+            if (length >= 0 && written != length) {
+                throw new IOException("Content of " + file.getPath() + " ended after "
+                        + written + " of " + length + " bytes");
+            }
+            if (length < 0) {
+                channel.truncate(written);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Writes up to {@code count} bytes from a stream at a given position of a channel.
+     * Concurrent calls may write to distinct regions of the same channel.
+     *
+     * @param in stream to read from.
+     * @param channel channel to write to.
+     * @param position position in the channel of the first byte to write.
+     * @param count maximum number of bytes to write.
+     * @return number of bytes written; less than {@code count} only if the stream ended.
+     * @throws IOException
+     */
+    static long write(InputStream in, FileChannel channel, long position, long count) throws IOException {
+        BufferPool bufferPool = BufferPool.getDefault();
+        byte[] buffer = bufferPool.acquire();
+        long written = 0;
+        try {
+            boolean endOfStream = false;
+            while (written < count && !endOfStream) {
+                // fill the buffer as much as possible, so that writes are large
+                int filled = 0;
+                int toFill = (int) Math.min(buffer.length, count - written);
+                while (filled < toFill) {
+                    int read = in.read(buffer, filled, toFill - filled);
+                    if (read == -1) {
+                        endOfStream = true;
+                        break;
+                    }
+                    filled += read;
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, filled);
+                while (byteBuffer.hasRemaining()) {
+                    written += channel.write(byteBuffer, position + written);
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Entity whose content is a slice of a file, read through a {@link FileChannel}.
+ * <p>
+ * Reads are positional, so several slices of the same channel can be
+ * sent at the same time. The entity is repeatable.
+ * <p>
+ * Content is copied through large buffers taken from a {@link BufferPool}.
+ * A digest, if given, is updated with the bytes written, so that the
+ * checksum of the slice is computed without reading it a second time.
+ */
+public class FileSliceEntity extends AbstractHttpEntity {
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private final BufferPool bufferPool;
+    private final MessageDigest digest;
+
+    /**
+     * @param channel channel of the file to read the slice from.
+     * @param offset position of the first byte of the slice.
+     * @param length number of bytes in the slice.
+     */
+    public FileSliceEntity(FileChannel channel, long offset, long length) {
+        this(channel, offset, length, BufferPool.getDefault());
+    }
+
+    /**
+     * @param channel channel of the file to read the slice from.
+     * @param offset position of the first byte of the slice.
+     * @param length number of bytes in the slice.
+     * @param bufferPool pool of the buffers to copy the content through.
+     */
+    public FileSliceEntity(FileChannel channel, long offset, long length, BufferPool bufferPool) {
+        this(channel, offset, length, bufferPool, null);
+    }
+
+    /**
+     * @param channel channel of the file to read the slice from.
+     * @param offset position of the first byte of the slice.
+     * @param length number of bytes in the slice.
+     * @param digest digest to update with the written bytes, may be {@code null};
+     *               it is reset whenever the content is written again.
+     */
+    public FileSliceEntity(FileChannel channel, long offset, long length, MessageDigest digest) {
+        this(channel, offset, length, BufferPool.getDefault(), digest);
+    }
+
+    private FileSliceEntity(FileChannel channel, long offset, long length, BufferPool bufferPool,
+            MessageDigest digest) {
+        if (channel == null) {
+            throw new IllegalArgumentException("File channel may not be null");
+        }
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+        this.bufferPool = bufferPool;
+        this.digest = digest;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new SliceInputStream();
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        if (outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        if (digest != null) {
+            // a retried request sends the content again
+            digest.reset();
+        }
+        byte[] buffer = bufferPool.acquire();
+        try {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                // fill the buffer before writing, so that writes are large
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+                while (byteBuffer.hasRemaining()) {
+                    if (channel.read(byteBuffer, position + byteBuffer.position()) == -1) {
+                        throw new EOFException("File ended before the end of the slice");
+                    }
+                }
+                outstream.write(buffer, 0, byteBuffer.limit());
+                if (digest != null) {
+                    digest.update(buffer, 0, byteBuffer.limit());
+                }
+                position += byteBuffer.limit();
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Reads the slice from the channel; closing it leaves the channel open.
+     */
+    private class SliceInputStream extends InputStream {
+        private long position = offset;
+        private final long end = offset + length;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read == -1) {
+                throw new EOFException("File ended before the end of the slice");
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helper class to write the state files of the samples, such as download
+ * journals, inventory snapshots and session caches.
+ */
+public class FileUtil {
+
+    /**
+     * Writes the content of a file.
+     */
+    public interface ContentWriter {
+        /**
+         * @param out stream to write the content to; it is flushed and closed by the caller.
+         * @throws IOException
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    private FileUtil() {
+    }
+
+    /**
+     * Replaces the content of a file. The content is written to a temporary
+     * file next to it, forced to the storage, and renamed over the file, so
+     * that a crash leaves either the previous or the new content, never a
+     * torn file.
+     *
+     * @param file file to write.
+     * @param writer writer of the new content.
+     * @throws IOException
+     */
+    public static void writeAtomically(File file, ContentWriter writer) throws IOException {
+        writeAtomically(file, writer, false);
+    }
+
+    /**
+     * Replaces the content of a file, as {@link #writeAtomically(File, ContentWriter)}
+     * does, optionally restricting the file to its owner. The permissions are
+     * set as the file is created, before any content is written to it.
+     *
+     * @param file file to write.
+     * @param writer writer of the new content.
+     * @param ownerOnly whether only the owner of the file may access it.
+     * @throws IOException if the file cannot be written, or cannot be
+     *                     restricted to its owner on this platform.
+     */
+    public static void writeAtomically(File file, ContentWriter writer, boolean ownerOnly)
+            throws IOException {
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        // a leftover of a crash may have other permissions
+        Files.deleteIfExists(tmp);
+        if (ownerOnly) {
+            createOwnerOnlyFile(tmp);
+        } else {
+            Files.createFile(tmp);
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                writer.write(out);
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        forceDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Creates a file which only its owner may access, with POSIX permissions
+     * or, on Windows, with an access control list.
+     */
+    private static void createOwnerOnlyFile(Path path) throws IOException {
+        FileSystem fileSystem = path.getFileSystem();
+        Set<String> views = fileSystem.supportedFileAttributeViews();
+        if (views.contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } else if (views.contains("acl")) {
+            UserPrincipal owner = fileSystem.getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            final List<AclEntry> acl = Collections.singletonList(AclEntry.newBuilder()
+                    .setType(AclEntryType.ALLOW)
+                    .setPrincipal(owner)
+                    .setPermissions(EnumSet.allOf(AclEntryPermission.class))
+                    .build());
+            Files.createFile(path, new FileAttribute<List<AclEntry>>() {
+                @Override
+                public String name() {
+                    return "acl:acl";
+                }
+
+                @Override
+                public List<AclEntry> value() {
+                    return acl;
+                }
+            });
+        } else {
+            throw new IOException("Cannot restrict " + path + " to its owner on this platform");
+        }
+    }
+
+    /**
+     * Forces the entries of a directory to the storage, so that a rename in it
+     * survives a crash. Not every platform can open a directory, Windows does not.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // the rename is durable once the platform flushes the directory
+        }
+    }
+}
@@ -15,30 +15,53 @@
 package com.vmware.content.samples.client.util;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContextBuilder;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
-import org.apache.http.entity.FileEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 
 /**
  * Helper class to deal with http upload and download.
+ * <p>
+ * All transfers share a single pooled HTTPS client, so connections (and the
+ * TLS sessions negotiated on them) are reused across files instead of doing
+ * a full handshake per transfer. Call {@link #shutdown()} once the transfers
+ * are done to release the pooled connections.
  */
 public class HttpUtil {
 
+    private static final int MAX_CONNECTIONS_TOTAL = 32;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+    private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+    private static final int CONNECTION_BUFFER_SIZE = 64 * 1024;
+
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static CloseableHttpClient transferClient;
+    private static IdleConnectionEvictor idleConnectionEvictor;
+
     private HttpUtil() {
     }
 
@@ -57,10 +80,61 @@ public class HttpUtil {
     public static void downloadFileFromUri(URI uri, String folderToDownloadFiles, String fileName)
             throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
         HttpGet getRequest = new HttpGet(uri);
-        CloseableHttpClient httpClient = getCloseableHttpClient();
-        HttpResponse response = httpClient.execute(getRequest);
         File file = new File(folderToDownloadFiles, fileName);
-        response.getEntity().writeTo(new FileOutputStream(file));
+        try (CloseableHttpResponse response = getTransferClient().execute(getRequest)) {
+            FileChannelSink.writeEntity(response.getEntity(), file);
+        }
+        IOUtil.print("Downloaded: " + file.getPath());
+    }
+
+    /**
+     * Downloads a file from a given HTTP URI in a given folder, fetching up to
+     * {@code segments} byte ranges of the file concurrently. Falls back to a
+     * single stream when the endpoint does not honor range requests.
+     *
+     * @param uri HTTP URI to download file from.
+     * @param folderToDownloadFiles path to a directory on the local storage
+     *                              to store the download the files.
+     * @param fileName name to use when creating the downloaded file on the local storage.
+     * @param segments maximum number of ranges to download concurrently.
+     * @throws java.security.NoSuchAlgorithmException
+     * @throws java.security.KeyStoreException
+     * @throws java.security.KeyManagementException
+     * @throws java.io.IOException
+     */
+    public static void downloadFileFromUri(URI uri, String folderToDownloadFiles, String fileName, int segments)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        File file = new File(folderToDownloadFiles, fileName);
+        new SegmentedDownload(getTransferClient(), uri, file, segments).download();
+        IOUtil.print("Downloaded: " + file.getPath());
+    }
+
+    /**
+     * Downloads a file from a given HTTP URI in a given folder, resuming an earlier
+     * interrupted download of the same content if there is one.
+     * <p>
+     * The byte ranges written so far are recorded in a journal next to the
+     * downloaded file. If the download fails, calling this method again with
+     * the same content version fetches only the missing ranges; the journal
+     * is removed once the download completes.
+     *
+     * @param uri HTTP URI to download file from.
+     * @param folderToDownloadFiles path to a directory on the local storage
+     *                              to store the download the files.
+     * @param fileName name to use when creating the downloaded file on the local storage.
+     * @param contentVersion content version of the item the file belongs to.
+     * @param segments maximum number of ranges to download concurrently.
+     * @throws java.security.NoSuchAlgorithmException
+     * @throws java.security.KeyStoreException
+     * @throws java.security.KeyManagementException
+     * @throws java.io.IOException
+     */
+    public static void resumableDownloadFileFromUri(URI uri, String folderToDownloadFiles, String fileName,
+            String contentVersion, int segments)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        File file = new File(folderToDownloadFiles, fileName);
+        DownloadJournal journal = new DownloadJournal(file, contentVersion, fileName);
+        new SegmentedDownload(getTransferClient(), uri, file, segments, journal).download();
         IOUtil.print("Downloaded: " + file.getPath());
     }
 
@@ -76,20 +150,136 @@ public class HttpUtil {
      */
     public static void uploadFileToUri(File localFile, URI uploadUri)
             throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
-        CloseableHttpClient httpClient = getCloseableHttpClient();
+        uploadFileToUri(localFile, uploadUri, null);
+    }
+
+    /**
+     * Uploads a file from local storage to a given HTTP URI, updating a digest
+     * with the bytes sent.
+     *
+     * @param localFile local storage path to the file to upload.
+     * @param uploadUri HTTP URI where the file needs to be uploaded.
+     * @param digest digest to update with the bytes sent, may be {@code null}.
+     * @throws java.security.NoSuchAlgorithmException
+     * @throws java.security.KeyStoreException
+     * @throws java.security.KeyManagementException
+     * @throws java.io.IOException
+     */
+    public static void uploadFileToUri(File localFile, URI uploadUri, MessageDigest digest)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
         HttpPut request = new HttpPut(uploadUri);
-        HttpEntity content = new FileEntity(localFile);
-        request.setEntity(content);
-        HttpResponse response = httpClient.execute(request);
-        EntityUtils.consumeQuietly(response.getEntity());
+        try (FileChannel channel = new RandomAccessFile(localFile, "r").getChannel()) {
+            HttpEntity content = new FileSliceEntity(channel, 0, channel.size(), digest);
+            request.setEntity(content);
+            executeAndConsume(request);
+        }
     }
 
-    private static CloseableHttpClient getCloseableHttpClient()
+    /**
+     * Executes a request on the shared transfer client and consumes the response,
+     * so that the connection is handed back to the pool.
+     *
+     * @param request request to execute.
+     * @throws java.security.NoSuchAlgorithmException
+     * @throws java.security.KeyStoreException
+     * @throws java.security.KeyManagementException
+     * @throws java.io.IOException
+     */
+    public static void executeAndConsume(HttpUriRequest request)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        try (CloseableHttpResponse response = getTransferClient().execute(request)) {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    /**
+     * Gets the HTTPS client shared by all uploads and downloads, creating it on first use.
+     * Callers must not close the returned client; use {@link #shutdown()} instead.
+     *
+     * @return the shared, pooled {@link CloseableHttpClient}.
+     * @throws java.security.NoSuchAlgorithmException
+     * @throws java.security.KeyStoreException
+     * @throws java.security.KeyManagementException
+     */
+    public static synchronized CloseableHttpClient getTransferClient()
             throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
-        SSLContextBuilder builder = new SSLContextBuilder();
-        builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
-        SSLConnectionSocketFactory sslsf =
-                new SSLConnectionSocketFactory(builder.build());
-        return HttpClients.custom().setSSLSocketFactory(sslsf).build();
+        if (transferClient == null) {
+            SSLContextBuilder builder = new SSLContextBuilder();
+            builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
+            // a single SSL context keeps a single session cache,
+            // which lets new connections resume earlier TLS sessions
+            SSLConnectionSocketFactory sslsf =
+                    new SSLConnectionSocketFactory(builder.build());
+            Registry<ConnectionSocketFactory> socketFactoryRegistry =
+                    RegistryBuilder.<ConnectionSocketFactory>create()
+                            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                            .register("https", sslsf)
+                            .build();
+
+            connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+            connectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+            // let large entity writes go to the socket without being split in small chunks
+            connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                    .setBufferSize(CONNECTION_BUFFER_SIZE)
+                    .build());
+
+            transferClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    // connections are not bound to a user, so any pooled one can be reused
+                    .disableConnectionState()
+                    .build();
+
+            idleConnectionEvictor = new IdleConnectionEvictor(connectionManager);
+            idleConnectionEvictor.start();
+        }
+        return transferClient;
+    }
+
+    /**
+     * Closes the shared transfer client and all pooled connections.
+     * A later transfer creates a new client.
+     */
+    public static synchronized void shutdown() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.interrupt();
+            idleConnectionEvictor = null;
+        }
+        if (transferClient != null) {
+            try {
+                transferClient.close();
+            } catch (IOException e) {
+                IOUtil.print("Failed to close the HTTP transfer client: " + e.getMessage());
+            }
+            transferClient = null;
+            connectionManager = null;
+        }
+    }
+
+    /**
+     * Background thread to drop expired and long idle connections from the pool,
+     * as the server may close them on its side at any time.
+     */
+    private static class IdleConnectionEvictor extends Thread {
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        IdleConnectionEvictor(PoolingHttpClientConnectionManager connectionManager) {
+            super("http-idle-connection-evictor");
+            setDaemon(true);
+            this.connectionManager = connectionManager;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    TimeUnit.SECONDS.sleep(IDLE_CONNECTION_TIMEOUT_SECONDS / 2);
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            }
+        }
     }
 }
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Index of the entries of an OVA package, which is a tar archive.
+ * <p>
+ * Only the tar headers are read, to record where the content of each entry
+ * starts in the OVA file and how long it is. The entries can then be read
+ * independently of each other, and concurrently.
+ */
+public class OvaIndex {
+    private static final int RECORD_SIZE = 512;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final File ova;
+    private final List<Entry> entries;
+
+    /**
+     * A file in the OVA package.
+     */
+    public static class Entry {
+        private final String name;
+        private final long offset;
+        private final long size;
+
+        Entry(String name, long offset, long size) {
+            this.name = name;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return position of the first content byte in the OVA file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private OvaIndex(File ova, List<Entry> entries) {
+        this.ova = ova;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public File getOva() {
+        return ova;
+    }
+
+    /**
+     * @return the files of the OVA package, in the order of the archive.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Scans the tar headers of an OVA file.
+     *
+     * @param ova OVA file on the local storage.
+     * @return the index of the OVA file.
+     * @throws IOException
+     */
+    public static OvaIndex scan(File ova) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(ova, "r")) {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            long position = 0;
+            // set by the metadata entries preceding an entry, and applying to it
+            String longName = null;
+            Map<String, String> paxHeaders = Collections.emptyMap();
+            while (position + RECORD_SIZE <= length) {
+                byte[] header = read(channel, position, RECORD_SIZE);
+                if (isEndOfArchive(header)) {
+                    break;
+                }
+                // sizes too large for octal are read from their GNU base-256 encoding
+                TarArchiveEntry tarEntry = new TarArchiveEntry(header);
+                long dataOffset = position + RECORD_SIZE;
+                long size = tarEntry.getSize();
+                if (tarEntry.isGNULongNameEntry()) {
+                    // the name of the next entry is stored as the content of this one
+                    longName = trimNul(new String(read(channel, dataOffset, toInt(size)), UTF_8));
+                } else if (tarEntry.isPaxHeader()) {
+                    paxHeaders = parsePaxHeaders(read(channel, dataOffset, toInt(size)));
+                } else if (!tarEntry.isGlobalPaxHeader() && !tarEntry.isGNULongLinkEntry()) {
+                    // sizes of 8 GiB and more only fit in the PAX header
+                    String paxSize = paxHeaders.get("size");
+                    if (paxSize != null) {
+                        size = parseSize(paxSize);
+                    }
+                    if (dataOffset + size > length) {
+                        throw new EOFException("Truncated OVA file");
+                    }
+                    if (isRegularFile(tarEntry)) {
+                        String name = paxHeaders.get("path");
+                        if (name == null) {
+                            name = longName != null ? longName : tarEntry.getName();
+                        }
+                        entries.add(new Entry(name, dataOffset, size));
+                    }
+                    longName = null;
+                    paxHeaders = Collections.emptyMap();
+                }
+                // content is padded to a whole number of records
+                position = dataOffset + (size + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+            }
+        }
+        return new OvaIndex(ova, entries);
+    }
+
+    private static byte[] read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Truncated OVA file");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static boolean isEndOfArchive(byte[] header) {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String trimNul(String value) {
+        int nul = value.indexOf('\0');
+        return nul >= 0 ? value.substring(0, nul) : value;
+    }
+
+    private static boolean isRegularFile(TarArchiveEntry tarEntry) {
+        return !tarEntry.isDirectory() && !tarEntry.isSymbolicLink() && !tarEntry.isLink()
+                && !tarEntry.isCharacterDevice() && !tarEntry.isBlockDevice() && !tarEntry.isFIFO();
+    }
+
+    private static int toInt(long size) throws IOException {
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid tar metadata entry size " + size);
+        }
+        return (int) size;
+    }
+
+    private static long parseSize(String value) throws IOException {
+        try {
+            long size = Long.parseLong(value);
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IOException("Invalid PAX size " + value);
+    }
+
+    /**
+     * Parses the records of a PAX extended header, which are of the form
+     * "length key=value\n", the length counting the bytes of the whole record.
+     */
+    private static Map<String, String> parsePaxHeaders(byte[] content) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int position = 0;
+        while (position < content.length && content[position] != 0) {
+            int space = position;
+            while (space < content.length && content[space] != ' ') {
+                space++;
+            }
+            int end;
+            try {
+                end = position + Integer.parseInt(new String(content, position, space - position, US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed PAX header record at " + position);
+            }
+            if (space >= content.length || end <= space || end > content.length || content[end - 1] != '\n') {
+                throw new IOException("Malformed PAX header record at " + position);
+            }
+            String record = new String(content, space + 1, end - 1 - (space + 1), UTF_8);
+            int equals = record.indexOf('=');
+            if (equals < 0) {
+                throw new IOException("Malformed PAX header record at " + position);
+            }
+            headers.put(record.substring(0, equals), record.substring(equals + 1));
+            position = end;
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The parts of an OVF descriptor needed to plan its upload: the files it
+ * references, the capacities of its disks and the names of its networks.
+ * <p>
+ * The descriptor is read with a streaming parser, which stops at the first
+ * virtual system: the envelope sections parsed here precede the virtual
+ * systems, which make the bulk of large descriptors.
+ */
+public class OvfDescriptor {
+    private static final Pattern ALLOCATION_UNITS = Pattern.compile("byte\\s*(\\*\\s*2\\^(\\d+))?");
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        // descriptors are untrusted input
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final List<FileReference> files;
+    private final List<Disk> disks;
+    private final List<String> networks;
+
+    /**
+     * A file referenced by the descriptor.
+     */
+    public static class FileReference {
+        private final String id;
+        private final String href;
+        private final long size;
+
+        FileReference(String id, String href, long size) {
+            this.id = id;
+            this.href = href;
+            this.size = size;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return location of the file, relative to the descriptor.
+         */
+        public String getHref() {
+            return href;
+        }
+
+        /**
+         * @return size of the file in bytes, or -1 if the descriptor does not give it.
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * A virtual disk of the descriptor.
+     */
+    public static class Disk {
+        private final String diskId;
+        private final String fileRef;
+        private final long capacity;
+        private final long populatedSize;
+
+        Disk(String diskId, String fileRef, long capacity, long populatedSize) {
+            this.diskId = diskId;
+            this.fileRef = fileRef;
+            this.capacity = capacity;
+            this.populatedSize = populatedSize;
+        }
+
+        public String getDiskId() {
+            return diskId;
+        }
+
+        /**
+         * @return identifier of the file backing the disk, or {@code null} for an empty disk.
+         */
+        public String getFileRef() {
+            return fileRef;
+        }
+
+        /**
+         * @return capacity of the disk in bytes, or -1 if it is not a plain number.
+         */
+        public long getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * @return populated size of the disk in bytes, or -1 if the descriptor does not give it.
+         */
+        public long getPopulatedSize() {
+            return populatedSize;
+        }
+    }
+
+    private OvfDescriptor(List<FileReference> files, List<Disk> disks, List<String> networks) {
+        this.files = Collections.unmodifiableList(files);
+        this.disks = Collections.unmodifiableList(disks);
+        this.networks = Collections.unmodifiableList(networks);
+    }
+
+    /**
+     * Parses an OVF descriptor.
+     *
+     * @param ovfFile the descriptor.
+     * @return the parsed descriptor.
+     * @throws IOException if the file cannot be read or is not an OVF descriptor.
+     */
+    public static OvfDescriptor parse(File ovfFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(ovfFile))) {
+            return parse(in);
+        }
+    }
+
+    /**
+     * Resolves a file reference of an OVF descriptor, a URL relative to the
+     * descriptor or an absolute one.
+     *
+     * @param ovfFile the descriptor.
+     * @param href the reference, as found in the descriptor.
+     * @return the URL of the file, a file URL for a local file.
+     */
+    public static URI resolveHref(File ovfFile, String href) {
+        File directory = ovfFile.getAbsoluteFile().getParentFile();
+        URI base = directory.toURI();
+        if (!base.getPath().endsWith("/")) {
+            // only an existing directory gets the trailing slash
+            base = URI.create(base + "/");
+        }
+        try {
+            return base.resolve(new URI(href));
+        } catch (URISyntaxException e) {
+            // not escaped, such as a name with spaces
+            return new File(directory, href).toURI();
+        }
+    }
+
+    /**
+     * Parses an OVF descriptor.
+     *
+     * @param in content of the descriptor, left open.
+     * @return the parsed descriptor.
+     * @throws IOException if the content cannot be read or is not an OVF descriptor.
+     */
+    public static OvfDescriptor parse(InputStream in) throws IOException {
+        List<FileReference> files = new ArrayList<>();
+        List<Disk> disks = new ArrayList<>();
+        List<String> networks = new ArrayList<>();
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                // sections are recognized by their local names, whatever the OVF version
+                String section = null;
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                        if (depth == 1) {
+                            section = null;
+                        }
+                        continue;
+                    } else if (event != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 1) {
+                        if (!name.equals("Envelope")) {
+                            throw new IOException("Not an OVF descriptor, root element is " + name);
+                        }
+                    } else if (depth == 2) {
+                        if (name.equals("VirtualSystem") || name.equals("VirtualSystemCollection")) {
+                            break;
+                        }
+                        section = name;
+                    } else if (depth == 3) {
+                        if ("References".equals(section) && name.equals("File")) {
+                            files.add(new FileReference(getAttribute(reader, "id"),
+                                    getAttribute(reader, "href"),
+                                    parseLong(getAttribute(reader, "size"), 1)));
+                        } else if ("DiskSection".equals(section) && name.equals("Disk")) {
+                            long unit = parseAllocationUnit(
+                                    getAttribute(reader, "capacityAllocationUnits"));
+                            disks.add(new Disk(getAttribute(reader, "diskId"),
+                                    getAttribute(reader, "fileRef"),
+                                    parseLong(getAttribute(reader, "capacity"), unit),
+                                    parseLong(getAttribute(reader, "populatedSize"), 1)));
+                        } else if ("NetworkSection".equals(section) && name.equals("Network")) {
+                            networks.add(getAttribute(reader, "name"));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot parse OVF descriptor", e);
+        }
+        return new OvfDescriptor(files, disks, networks);
+    }
+
+    public List<FileReference> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the referenced files, largest first; files without a size come last.
+     */
+    public List<FileReference> getFilesLargestFirst() {
+        List<FileReference> sorted = new ArrayList<>(files);
+        Collections.sort(sorted, new Comparator<FileReference>() {
+            @Override
+            public int compare(FileReference a, FileReference b) {
+                return Long.compare(b.getSize(), a.getSize());
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @return total size of the referenced files, counting only the files whose size is given.
+     */
+    public long getTotalFileSize() {
+        long total = 0;
+        for (FileReference file : files) {
+            total += Math.max(file.getSize(), 0);
+        }
+        return total;
+    }
+
+    public List<Disk> getDisks() {
+        return disks;
+    }
+
+    public List<String> getNetworks() {
+        return networks;
+    }
+
+    /**
+     * Gets an attribute by its local name, as descriptors qualify their
+     * attributes with the prefix of the OVF namespace of their version.
+     */
+    private static String getAttribute(XMLStreamReader reader, String localName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (reader.getAttributeLocalName(i).equals(localName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static long parseLong(String value, long unit) {
+        if (value == null || unit < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim()) * unit;
+        } catch (NumberFormatException e) {
+            // for example a ${property} reference
+            return -1;
+        }
+    }
+
+    /**
+     * Parses allocation units such as "byte * 2^30"; the default unit is the byte.
+     */
+    private static long parseAllocationUnit(String units) {
+        if (units == null) {
+            return 1;
+        }
+        Matcher matcher = ALLOCATION_UNITS.matcher(units.trim());
+        if (!matcher.matches()) {
+            return -1;
+        }
+        return matcher.group(2) == null ? 1 : 1L << Integer.parseInt(matcher.group(2));
+    }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Downloads a single file as several byte ranges fetched concurrently,
+ * each written at its own offset of the preallocated target file.
+ * <p>
+ * The server support for range requests is probed first; if the endpoint
+ * does not honor them, the file is downloaded as a single stream.
+ * <p>
+ * When a {@link DownloadJournal} is given, the written ranges are checkpointed
+ * in it every few seconds as the download goes and when it fails, and only the ranges missing from an earlier,
+ * interrupted download of the same content are fetched.
+ */
+class SegmentedDownload {
+    private static final long MIN_SEGMENT_SIZE = 8L * 1024 * 1024;
+    private static final long CHECKPOINT_SIZE = 8L * 1024 * 1024;
+
+    private final CloseableHttpClient httpClient;
+    private final URI uri;
+    private final File file;
+    private final int maxSegments;
+    private final DownloadJournal journal;
+
+    SegmentedDownload(CloseableHttpClient httpClient, URI uri, File file, int maxSegments) {
+        this(httpClient, uri, file, maxSegments, null);
+    }
+
+    SegmentedDownload(CloseableHttpClient httpClient, URI uri, File file, int maxSegments,
+            DownloadJournal journal) {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.file = file;
+        this.maxSegments = maxSegments;
+        this.journal = journal;
+    }
+
+    void download() throws IOException {
+        long length;
+        HttpGet probe = new HttpGet(uri);
+        probe.setHeader("Range", "bytes=0-0");
+        try (CloseableHttpResponse response = httpClient.execute(probe)) {
+            int status = response.getStatusLine().getStatusCode();
+            length = getCompleteLength(response);
+            if (status == HttpStatus.SC_OK) {
+                // range requests are not honored; this response already has the whole content
+                if (journal != null) {
+                    journal.delete();
+                }
+                FileChannelSink.writeEntity(response.getEntity(), file);
+                return;
+            }
+            EntityUtils.consume(response.getEntity());
+            if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                // an empty file has no first byte to ask for
+                length = -1;
+            } else if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new IOException("Unexpected response to a range request for " + uri
+                        + ": " + response.getStatusLine());
+            }
+        }
+        if (length < 0) {
+            // the complete length is not known, so the file cannot be split
+            if (journal != null) {
+                journal.delete();
+            }
+            downloadAsSingleStream();
+            return;
+        }
+        downloadSegments(length);
+        if (journal != null) {
+            journal.delete();
+        }
+    }
+
+    private void downloadAsSingleStream() throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(uri))) {
+            FileChannelSink.writeEntity(response.getEntity(), file);
+        }
+    }
+
+    private void downloadSegments(long length) throws IOException {
+        List<long[]> missingRanges;
+        long missingBytes = length;
+        if (journal != null) {
+            long done = journal.open(length);
+            if (done > 0) {
+                IOUtil.print("Resuming download of " + file.getPath() + " (" + done + " of "
+                        + length + " bytes already downloaded)");
+            }
+            missingRanges = journal.getMissingRanges();
+            missingBytes = length - done;
+        } else {
+            missingRanges = new ArrayList<>();
+            missingRanges.add(new long[] {0, length});
+        }
+
+        List<long[]> segments = splitIntoSegments(missingRanges, missingBytes, maxSegments);
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.max(1, Math.min(maxSegments, segments.size())));
+        // existing content is kept, as it may hold ranges from an earlier download
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+            final FileChannel channel = randomAccessFile.getChannel();
+
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final long[] segment : segments) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        downloadRange(channel, segment[0], segment[1]);
+                        return null;
+                    }
+                }));
+            }
+            try {
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while downloading " + uri);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new RuntimeException(e.getCause());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (journal != null) {
+                    // keep the ranges written so far for the next attempt
+                    try {
+                        journal.checkpoint(channel);
+                    } catch (IOException checkpointFailure) {
+                        e.addSuppressed(checkpointFailure);
+                    }
+                }
+                throw e;
+            }
+            // sync once, after all the ranges are written
+            channel.force(false);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits ranges into segments of about equal size, of at least
+     * {@link #MIN_SEGMENT_SIZE} bytes but for the last of each range.
+     *
+     * @param ranges list of {first byte, last byte (exclusive)} pairs.
+     * @param totalBytes total size of the ranges.
+     * @param maxSegments number of segments to split the ranges into, at most.
+     * @return the segments, as {first byte, last byte (exclusive)} pairs, in order.
+     */
+    static List<long[]> splitIntoSegments(List<long[]> ranges, long totalBytes, int maxSegments) {
+        long segmentSize = Math.max(MIN_SEGMENT_SIZE, (totalBytes + maxSegments - 1) / maxSegments);
+        List<long[]> segments = new ArrayList<>();
+        for (long[] range : ranges) {
+            for (long start = range[0]; start < range[1]; start += segmentSize) {
+                segments.add(new long[] {start, Math.min(start + segmentSize, range[1])});
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Downloads the bytes from {@code first} to {@code end} (exclusive).
+     */
+    private void downloadRange(FileChannel channel, long first, long end) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        request.setHeader("Range", "bytes=" + first + "-" + (end - 1));
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new IOException("Range " + first + "-" + (end - 1) + " of " + uri
+                        + " not served: " + response.getStatusLine());
+            }
+            long position = first;
+            try (InputStream in = response.getEntity().getContent()) {
+                // write in steps, recording each step in the journal, which
+                // saves them now and then
+                long step = journal != null ? CHECKPOINT_SIZE : end - first;
+                long written;
+                do {
+                    written = FileChannelSink.write(in, channel, position, Math.min(step, end - position));
+                    if (journal != null) {
+                        journal.markCompleted(position, position + written);
+                        journal.checkpointIfDue(channel);
+                    }
+                    position += written;
+                } while (position < end && written > 0);
+            }
+            if (position != end) {
+                throw new IOException("Range " + first + "-" + (end - 1) + " of " + uri
+                        + " ended early at byte " + position);
+            }
+        }
+    }
+
+    /**
+     * Gets the complete length from a "Content-Range: bytes first-last/length" header.
+     *
+     * @return the complete length, or -1 if not known.
+     */
+    private static long getCompleteLength(CloseableHttpResponse response) {
+        Header contentRange = response.getFirstHeader("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        String value = contentRange.getValue();
+        int slash = value.lastIndexOf('/');
+        if (slash < 0 || value.endsWith("*")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
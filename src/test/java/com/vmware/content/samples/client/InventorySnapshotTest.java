@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.vmware.content.LibraryModel;
+import com.vmware.content.library.ItemModel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InventorySnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsLibrariesAndItems() throws IOException {
+        File file = new File(folder.getRoot(), "inventory.snapshot");
+        InventorySnapshot snapshot = new InventorySnapshot();
+        snapshot.putLibrary(library("lib-1", "Templates", "3"));
+        snapshot.putItem(item("item-1", "lib-1", "ttylinux", 1024L, "5", "2"));
+        // missing fields are kept as missing
+        snapshot.putItem(item("item-2", "lib-1", "été", null, "1", null));
+
+        snapshot.save(file);
+        InventorySnapshot loaded = InventorySnapshot.load(file);
+
+        assertEquals(1, loaded.getLibraries().size());
+        InventorySnapshot.LibraryEntry library = loaded.getLibrary("lib-1");
+        assertEquals("Templates", library.getName());
+        assertEquals("LOCAL", library.getType());
+        assertEquals("3", library.getVersion());
+        assertEquals(2, loaded.getItems("lib-1").size());
+        InventorySnapshot.ItemEntry item = loaded.getItem("item-1");
+        assertEquals("ttylinux", item.getName());
+        assertEquals("ovf", item.getType());
+        assertEquals(1024, item.getSize());
+        assertEquals("5", item.getVersion());
+        assertEquals("2", item.getContentVersion());
+        InventorySnapshot.ItemEntry other = loaded.getItem("item-2");
+        assertEquals("été", other.getName());
+        assertEquals(-1, other.getSize());
+        assertNull(other.getContentVersion());
+    }
+
+    @Test
+    public void replacesPreviousSnapshot() throws IOException {
+        File file = new File(folder.getRoot(), "inventory.snapshot");
+        InventorySnapshot snapshot = new InventorySnapshot();
+        snapshot.putLibrary(library("lib-1", "Templates", "1"));
+        snapshot.save(file);
+        // the loaded snapshot must not keep the file from being replaced
+        InventorySnapshot loaded = InventorySnapshot.load(file);
+        loaded.removeLibrary("lib-1");
+        loaded.putLibrary(library("lib-2", "Images", "1"));
+
+        loaded.save(file);
+
+        InventorySnapshot reloaded = InventorySnapshot.load(file);
+        assertNull(reloaded.getLibrary("lib-1"));
+        assertEquals("Images", reloaded.getLibrary("lib-2").getName());
+        assertFalse(new File(folder.getRoot(), "inventory.snapshot.tmp").exists());
+    }
+
+    @Test
+    public void ignoresTruncatedSnapshot() throws IOException {
+        File file = new File(folder.getRoot(), "inventory.snapshot");
+        InventorySnapshot snapshot = new InventorySnapshot();
+        snapshot.putLibrary(library("lib-1", "Templates", "1"));
+        snapshot.putItem(item("item-1", "lib-1", "ttylinux", 1024L, "1", "1"));
+        snapshot.save(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        InventorySnapshot loaded = InventorySnapshot.load(file);
+
+        assertTrue(loaded.getLibraries().isEmpty());
+        assertTrue(loaded.getItems().isEmpty());
+    }
+
+    @Test
+    public void ignoresUnknownFormat() throws IOException {
+        File file = folder.newFile("inventory.snapshot");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a snapshot".getBytes("UTF-8"));
+        }
+
+        assertTrue(InventorySnapshot.load(file).getLibraries().isEmpty());
+    }
+
+    @Test
+    public void loadsMissingFileAsEmpty() throws IOException {
+        InventorySnapshot loaded = InventorySnapshot.load(new File(folder.getRoot(), "missing"));
+
+        assertTrue(loaded.getLibraries().isEmpty());
+        assertTrue(loaded.getItems().isEmpty());
+    }
+
+    private static LibraryModel library(String id, String name, String version) {
+        LibraryModel library = new LibraryModel();
+        library.setId(id);
+        library.setName(name);
+        library.setType(LibraryModel.LibraryType.LOCAL);
+        library.setVersion(version);
+        return library;
+    }
+
+    private static ItemModel item(String id, String libraryId, String name, Long size,
+            String version, String contentVersion) {
+        ItemModel item = new ItemModel();
+        item.setId(id);
+        item.setLibraryId(libraryId);
+        item.setName(name);
+        item.setType("ovf");
+        item.setSize(size);
+        item.setVersion(version);
+        item.setContentVersion(contentVersion);
+        return item;
+    }
+}
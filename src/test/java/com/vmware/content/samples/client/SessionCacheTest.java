@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionCacheTest {
+    private static final long ONE_HOUR_MILLIS = 60 * 60 * 1000;
+    private static final String TOKEN_XML = "<saml2:Assertion>token</saml2:Assertion>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsLogin() throws IOException {
+        File file = new File(folder.getRoot(), "session.cache");
+        long expirationTime = System.currentTimeMillis() + ONE_HOUR_MILLIS;
+        new SessionCache(file, "vc.example.com", "admin", "secret")
+                .store("https://vc.example.com/api", "node-1", TOKEN_XML, expirationTime);
+
+        SessionCache.Entry entry = new SessionCache(file, "vc.example.com", "admin", "secret").load();
+
+        assertNotNull(entry);
+        assertEquals("https://vc.example.com/api", entry.getVapiUrl());
+        assertEquals("node-1", entry.getManagementNodeId());
+        assertEquals(TOKEN_XML, entry.getTokenXml());
+        assertEquals(expirationTime, entry.getExpirationTime());
+        assertFalse(new File(folder.getRoot(), "session.cache.tmp").exists());
+    }
+
+    @Test
+    public void encryptsToken() throws IOException {
+        File file = new File(folder.getRoot(), "session.cache");
+        store(file, System.currentTimeMillis() + ONE_HOUR_MILLIS);
+
+        String content = new String(Files.readAllBytes(file.toPath()), "ISO-8859-1");
+
+        assertFalse(content.contains("token"));
+        assertFalse(content.contains("vc.example.com"));
+    }
+
+    @Test
+    public void restrictsFileToOwner() throws IOException {
+        Assume.assumeTrue(folder.getRoot().toPath().getFileSystem()
+                .supportedFileAttributeViews().contains("posix"));
+        File file = new File(folder.getRoot(), "session.cache");
+        store(file, System.currentTimeMillis() + ONE_HOUR_MILLIS);
+
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                Files.getPosixFilePermissions(file.toPath()));
+    }
+
+    @Test
+    public void ignoresWrongPassword() throws IOException {
+        File file = new File(folder.getRoot(), "session.cache");
+        store(file, System.currentTimeMillis() + ONE_HOUR_MILLIS);
+
+        assertNull(new SessionCache(file, "vc.example.com", "admin", "other").load());
+    }
+
+    @Test
+    public void ignoresTamperedFile() throws IOException {
+        File file = new File(folder.getRoot(), "session.cache");
+        store(file, System.currentTimeMillis() + ONE_HOUR_MILLIS);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // flips a bit of the last block of the cipher text, just before the MAC
+            long position = raf.length() - 32 - 4 - 1;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+
+        assertNull(new SessionCache(file, "vc.example.com", "admin", "secret").load());
+    }
+
+    @Test
+    public void ignoresOtherUser() throws IOException {
+        File file = new File(folder.getRoot(), "session.cache");
+        store(file, System.currentTimeMillis() + ONE_HOUR_MILLIS);
+
+        assertNull(new SessionCache(file, "vc.example.com", "other", "secret").load());
+    }
+
+    @Test
+    public void ignoresTokenCloseToExpiry() throws IOException {
+        File file = new File(folder.getRoot(), "session.cache");
+        store(file, System.currentTimeMillis() + SessionCache.DEFAULT_RENEWAL_MARGIN_MILLIS / 2);
+
+        assertNull(new SessionCache(file, "vc.example.com", "admin", "secret").load());
+    }
+
+    private static void store(File file, long expirationTime) throws IOException {
+        new SessionCache(file, "vc.example.com", "admin", "secret")
+                .store("https://vc.example.com/api", "node-1", TOKEN_XML, expirationTime);
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.content.library.item.FileTypes.ChecksumInfo;
+import org.junit.After;
+import org.junit.Test;
+
+public class ChecksumReadAheadTest {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void readsAheadOneFilePerUpload() throws Exception {
+        ChecksumReadAhead readAhead = new ChecksumReadAhead(executor, checksums(4, null, null), 2);
+
+        // the first uploads are digested while sent
+        assertNull(readAhead.startUpload(0));
+        assertNull(readAhead.startUpload(1));
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        // queued by the first two uploads only
+        assertEquals(2, calls.get());
+
+        assertEquals("2", readAhead.startUpload(2).getChecksum());
+        assertEquals("3", readAhead.startUpload(3).getChecksum());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void skipsChecksumNotStarted() throws Exception {
+        CountDownLatch release = block(executor);
+        ChecksumReadAhead readAhead = new ChecksumReadAhead(executor, checksums(2, null, null), 1);
+
+        readAhead.startUpload(0);
+        assertNull(readAhead.startUpload(1));
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void waitsForRunningChecksum() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ChecksumReadAhead readAhead = new ChecksumReadAhead(executor,
+                checksums(2, started, release), 1);
+
+        readAhead.startUpload(0);
+        started.await();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // released anyway
+                }
+                release.countDown();
+            }
+        }.start();
+
+        assertEquals("1", readAhead.startUpload(1).getChecksum());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void cancelSkipsQueuedChecksums() throws Exception {
+        CountDownLatch release = block(executor);
+        ChecksumReadAhead readAhead = new ChecksumReadAhead(executor, checksums(3, null, null), 2);
+        readAhead.startUpload(0);
+        readAhead.startUpload(1);
+
+        readAhead.cancel();
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(0, calls.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsUnreadableFile() throws Exception {
+        List<Callable<ChecksumInfo>> checksums = new ArrayList<>();
+        checksums.add(null);
+        checksums.add(new Callable<ChecksumInfo>() {
+            @Override
+            public ChecksumInfo call() throws IOException {
+                throw new IOException("unreadable");
+            }
+        });
+        ChecksumReadAhead readAhead = new ChecksumReadAhead(executor, checksums, 1);
+        readAhead.startUpload(0);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        readAhead.startUpload(1);
+    }
+
+    private List<Callable<ChecksumInfo>> checksums(int count, final CountDownLatch started,
+            final CountDownLatch release) {
+        List<Callable<ChecksumInfo>> checksums = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String checksum = Integer.toString(i);
+            checksums.add(new Callable<ChecksumInfo>() {
+                @Override
+                public ChecksumInfo call() throws InterruptedException {
+                    calls.incrementAndGet();
+                    if (started != null) {
+                        started.countDown();
+                        release.await();
+                    }
+                    ChecksumInfo checksumInfo = new ChecksumInfo();
+                    checksumInfo.setChecksum(checksum);
+                    return checksumInfo;
+                }
+            });
+        }
+        return checksums;
+    }
+
+    private static CountDownLatch block(ExecutorService executor) {
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        });
+        return release;
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DownloadJournalTest {
+    private static final long LENGTH = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File target;
+
+    @Before
+    public void createTarget() throws IOException {
+        target = new File(folder.getRoot(), "disk.vmdk");
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.setLength(LENGTH);
+        }
+    }
+
+    @Test
+    public void startsWithWholeFileMissing() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+
+        assertEquals(0, journal.open(LENGTH));
+        assertRanges(journal.getMissingRanges(), 0, LENGTH);
+    }
+
+    @Test
+    public void mergesOverlappingAndAdjacentRanges() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+
+        journal.markCompleted(100, 200);
+        journal.markCompleted(300, 400);
+        // adjacent to the first, overlapping the second
+        journal.markCompleted(200, 350);
+        journal.markCompleted(600, 700);
+        // empty
+        journal.markCompleted(800, 800);
+
+        assertRanges(journal.getMissingRanges(), 0, 100, 400, 600, 700, LENGTH);
+    }
+
+    @Test
+    public void mergesRangeCoveringOthers() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+        journal.markCompleted(100, 200);
+        journal.markCompleted(300, 400);
+
+        journal.markCompleted(50, 500);
+
+        assertRanges(journal.getMissingRanges(), 0, 50, 500, LENGTH);
+    }
+
+    @Test
+    public void resumesFromSavedRanges() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+        journal.markCompleted(0, 250);
+        journal.markCompleted(500, 600);
+        checkpoint(journal);
+
+        DownloadJournal resumed = new DownloadJournal(target, "1", "disk.vmdk");
+
+        assertEquals(350, resumed.open(LENGTH));
+        assertRanges(resumed.getMissingRanges(), 250, 500, 600, LENGTH);
+    }
+
+    @Test
+    public void savesRangesOnlyAtCheckpoint() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+        journal.markCompleted(0, 250);
+        checkpoint(journal);
+        journal.markCompleted(500, 600);
+        // the last checkpoint is too recent for another one
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            journal.checkpointIfDue(raf.getChannel());
+        }
+
+        DownloadJournal resumed = new DownloadJournal(target, "1", "disk.vmdk");
+
+        assertEquals(250, resumed.open(LENGTH));
+        assertRanges(resumed.getMissingRanges(), 250, LENGTH);
+    }
+
+    @Test
+    public void discardsJournalOfOtherContent() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+        journal.markCompleted(0, 250);
+        checkpoint(journal);
+
+        DownloadJournal resumed = new DownloadJournal(target, "2", "disk.vmdk");
+
+        assertEquals(0, resumed.open(LENGTH));
+        assertRanges(resumed.getMissingRanges(), 0, LENGTH);
+    }
+
+    @Test
+    public void discardsJournalOfResizedTarget() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+        journal.markCompleted(0, 250);
+        checkpoint(journal);
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.setLength(LENGTH / 2);
+        }
+
+        assertEquals(0, new DownloadJournal(target, "1", "disk.vmdk").open(LENGTH));
+    }
+
+    @Test
+    public void deletesJournal() throws IOException {
+        DownloadJournal journal = new DownloadJournal(target, "1", "disk.vmdk");
+        journal.open(LENGTH);
+        File journalFile = new File(target.getPath() + ".journal");
+        assertTrue(journalFile.isFile());
+
+        journal.delete();
+
+        assertFalse(journalFile.exists());
+    }
+
+    private void checkpoint(DownloadJournal journal) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            journal.checkpoint(raf.getChannel());
+        }
+    }
+
+    private static void assertRanges(List<long[]> ranges, long... bounds) {
+        assertEquals(bounds.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertArrayEquals(new long[] {bounds[2 * i], bounds[2 * i + 1]}, ranges.get(i));
+        }
+    }
+}
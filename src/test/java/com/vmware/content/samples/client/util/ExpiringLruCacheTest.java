@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ExpiringLruCacheTest {
+    private static final long ONE_HOUR_MILLIS = 60 * 60 * 1000;
+
+    @Test
+    public void returnsCachedValues() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(ONE_HOUR_MILLIS, 10);
+        cache.put("a", "1");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void expiresEntries() throws InterruptedException {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(50, 10);
+        cache.put("a", "1");
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(ONE_HOUR_MILLIS, 2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        // makes b the least recently used entry
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void removesEntriesMatchingFilter() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(ONE_HOUR_MILLIS, 10);
+        cache.put("library/1", "l");
+        cache.put("item/1", "i1");
+        cache.put("item/2", "i2");
+
+        cache.removeIf(new ExpiringLruCache.KeyFilter<String>() {
+            @Override
+            public boolean matches(String key) {
+                return key.startsWith("item/");
+            }
+        });
+
+        assertEquals(1, cache.size());
+        assertEquals("l", cache.get("library/1"));
+    }
+
+    @Test
+    public void dropsValueLoadedBeforeRemoval() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(ONE_HOUR_MILLIS, 10);
+        long stamp = cache.getStamp();
+        // removed while loading
+        cache.remove("a");
+        cache.remove("b");
+
+        assertFalse(cache.put("a", "stale", stamp));
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("c", "3", stamp));
+        assertTrue(cache.put("a", "1", cache.getStamp()));
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void dropsValuesLoadedBeforeClear() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(ONE_HOUR_MILLIS, 10);
+        long stamp = cache.getStamp();
+        cache.clear();
+
+        assertFalse(cache.put("a", "stale", stamp));
+        assertTrue(cache.put("a", "1", cache.getStamp()));
+    }
+
+    @Test
+    public void dropsValueOfForgottenRemoval() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(ONE_HOUR_MILLIS, 2);
+        long stamp = cache.getStamp();
+        cache.remove("a");
+        // forgets the removal of a
+        cache.remove("b");
+        cache.remove("c");
+
+        assertFalse(cache.put("a", "stale", stamp));
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OvaIndexTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexesUstarEntries() throws IOException {
+        File ova = writeOva(TarArchiveOutputStream.LONGFILE_ERROR, "vm.ovf", "vm-disk1.vmdk");
+
+        List<OvaIndex.Entry> entries = OvaIndex.scan(ova).getEntries();
+
+        assertEquals(2, entries.size());
+        assertEntry(ova, entries.get(0), "vm.ovf");
+        assertEntry(ova, entries.get(1), "vm-disk1.vmdk");
+    }
+
+    @Test
+    public void indexesGnuLongNames() throws IOException {
+        String longName = repeat('d', 150) + ".vmdk";
+        File ova = writeOva(TarArchiveOutputStream.LONGFILE_GNU, "vm.ovf", longName);
+
+        List<OvaIndex.Entry> entries = OvaIndex.scan(ova).getEntries();
+
+        assertEquals(2, entries.size());
+        assertEntry(ova, entries.get(0), "vm.ovf");
+        assertEntry(ova, entries.get(1), longName);
+    }
+
+    @Test
+    public void indexesPaxPaths() throws IOException {
+        String longName = repeat('p', 150) + ".vmdk";
+        File ova = writeOva(TarArchiveOutputStream.LONGFILE_POSIX, longName, "vm.mf");
+
+        List<OvaIndex.Entry> entries = OvaIndex.scan(ova).getEntries();
+
+        assertEquals(2, entries.size());
+        assertEntry(ova, entries.get(0), longName);
+        assertEntry(ova, entries.get(1), "vm.mf");
+    }
+
+    @Test
+    public void appliesPaxSizeOverUstarSize() throws IOException {
+        // the ustar size field is left at 0, as writers do for sizes beyond its range
+        long size = 3000;
+        File ova = folder.newFile("pax-size.ova");
+        try (RandomAccessFile file = new RandomAccessFile(ova, "rw")) {
+            byte[] pax = paxRecord("size", Long.toString(size));
+            writeHeader(file, 0, new TarArchiveEntry("PaxHeaders/disk.vmdk",
+                    TarConstants.LF_PAX_EXTENDED_HEADER_LC), pax.length, false);
+            file.seek(512);
+            file.write(pax);
+            writeHeader(file, 1024, new TarArchiveEntry("disk.vmdk"), 0, false);
+            long next = 1536 + padded(size);
+            writeHeader(file, next, new TarArchiveEntry("vm.mf"), 10, false);
+            file.setLength(next + 512 + 512 + 1024);
+        }
+
+        List<OvaIndex.Entry> entries = OvaIndex.scan(ova).getEntries();
+
+        assertEquals(2, entries.size());
+        assertEquals("disk.vmdk", entries.get(0).getName());
+        assertEquals(1536, entries.get(0).getOffset());
+        assertEquals(size, entries.get(0).getSize());
+        assertEquals("vm.mf", entries.get(1).getName());
+        assertEquals(1536 + padded(size) + 512, entries.get(1).getOffset());
+    }
+
+    @Test
+    public void readsGnuBase256Sizes() throws IOException {
+        // beyond the 8 GiB octal limit; the file is sparse
+        long size = (9L << 30) + 1;
+        File ova = folder.newFile("base256.ova");
+        try (RandomAccessFile file = new RandomAccessFile(ova, "rw")) {
+            writeHeader(file, 0, new TarArchiveEntry("disk.vmdk"), size, true);
+            long next = 512 + padded(size);
+            writeHeader(file, next, new TarArchiveEntry("vm.mf"), 10, false);
+            file.setLength(next + 512 + 512 + 1024);
+        }
+
+        List<OvaIndex.Entry> entries = OvaIndex.scan(ova).getEntries();
+
+        assertEquals(2, entries.size());
+        assertEquals(size, entries.get(0).getSize());
+        assertEquals(512 + padded(size) + 512, entries.get(1).getOffset());
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedOva() throws IOException {
+        File ova = writeOva(TarArchiveOutputStream.LONGFILE_ERROR, "vm.ovf", "vm-disk1.vmdk");
+        try (RandomAccessFile file = new RandomAccessFile(ova, "rw")) {
+            // cut in the middle of the content of the second entry
+            file.setLength(OvaIndex.scan(ova).getEntries().get(1).getOffset() + 1);
+        }
+
+        OvaIndex.scan(ova);
+    }
+
+    private File writeOva(int longFileMode, String... names) throws IOException {
+        File ova = folder.newFile();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new FileOutputStream(ova))) {
+            out.setLongFileMode(longFileMode);
+            for (String name : names) {
+                byte[] content = contentOf(name);
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(content.length);
+                out.putArchiveEntry(entry);
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+        return ova;
+    }
+
+    private static void assertEntry(File ova, OvaIndex.Entry entry, String name) throws IOException {
+        assertEquals(name, entry.getName());
+        byte[] expected = contentOf(name);
+        assertEquals(expected.length, entry.getSize());
+        byte[] actual = new byte[expected.length];
+        try (RandomAccessFile file = new RandomAccessFile(ova, "r")) {
+            file.seek(entry.getOffset());
+            file.readFully(actual);
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+    private static byte[] contentOf(String name) {
+        // contents of different sizes, some spanning several records
+        return repeat(name, 1 + name.length() * 7).getBytes(UTF_8);
+    }
+
+    private static void writeHeader(RandomAccessFile file, long position, TarArchiveEntry entry,
+            long size, boolean starMode) throws IOException {
+        entry.setSize(size);
+        byte[] header = new byte[512];
+        entry.writeEntryHeader(header, ZipEncodingHelper.getZipEncoding("UTF-8"), starMode);
+        file.seek(position);
+        file.write(header);
+    }
+
+    private static byte[] paxRecord(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        // the length prefix counts its own digits
+        int length = record.length() + 1;
+        if (Integer.toString(length).length() > 1) {
+            length = record.length() + Integer.toString(record.length() + 2).length();
+        }
+        return (length + record).getBytes(UTF_8);
+    }
+
+    private static long padded(long size) {
+        return (size + 511) / 512 * 512;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+}
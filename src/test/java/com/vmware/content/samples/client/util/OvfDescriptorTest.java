@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OvfDescriptorTest {
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<Envelope xmlns=\"http://schemas.dmtf.org/ovf/envelope/1\""
+            + " xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\">\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parsesReferencesDisksAndNetworks() throws IOException {
+        OvfDescriptor descriptor = parse(ENVELOPE_START
+                + "<References>\n"
+                + "  <File ovf:id=\"file1\" ovf:href=\"disk1.vmdk\" ovf:size=\"1000\"/>\n"
+                + "  <File ovf:id=\"file2\" ovf:href=\"disk2.vmdk\" ovf:size=\"3000\"/>\n"
+                + "  <File ovf:id=\"file3\" ovf:href=\"cdrom.iso\"/>\n"
+                + "</References>\n"
+                + "<DiskSection>\n"
+                + "  <Info>Virtual disks</Info>\n"
+                + "  <Disk ovf:diskId=\"vmdisk1\" ovf:fileRef=\"file1\" ovf:capacity=\"2\""
+                + " ovf:capacityAllocationUnits=\"byte * 2^30\" ovf:populatedSize=\"900\"/>\n"
+                + "  <Disk ovf:diskId=\"vmdisk2\" ovf:capacity=\"4096\"/>\n"
+                + "</DiskSection>\n"
+                + "<NetworkSection>\n"
+                + "  <Network ovf:name=\"VM Network\"/>\n"
+                + "</NetworkSection>\n"
+                + "</Envelope>\n");
+
+        assertEquals(3, descriptor.getFiles().size());
+        OvfDescriptor.FileReference file = descriptor.getFiles().get(0);
+        assertEquals("file1", file.getId());
+        assertEquals("disk1.vmdk", file.getHref());
+        assertEquals(1000, file.getSize());
+        assertEquals(-1, descriptor.getFiles().get(2).getSize());
+        assertEquals(4000, descriptor.getTotalFileSize());
+        assertEquals("disk2.vmdk", descriptor.getFilesLargestFirst().get(0).getHref());
+        assertEquals("cdrom.iso", descriptor.getFilesLargestFirst().get(2).getHref());
+
+        assertEquals(2, descriptor.getDisks().size());
+        OvfDescriptor.Disk disk = descriptor.getDisks().get(0);
+        assertEquals("vmdisk1", disk.getDiskId());
+        assertEquals("file1", disk.getFileRef());
+        assertEquals(2L << 30, disk.getCapacity());
+        assertEquals(900, disk.getPopulatedSize());
+        OvfDescriptor.Disk emptyDisk = descriptor.getDisks().get(1);
+        assertNull(emptyDisk.getFileRef());
+        assertEquals(4096, emptyDisk.getCapacity());
+        assertEquals(-1, emptyDisk.getPopulatedSize());
+
+        assertEquals(Arrays.asList("VM Network"), descriptor.getNetworks());
+    }
+
+    @Test
+    public void resolvesHrefsAgainstDescriptor() {
+        File directory = new File(folder.getRoot(), "vm");
+        File ovfFile = new File(directory, "vm.ovf");
+
+        assertEquals(new File(directory, "disk1.vmdk"),
+                new File(OvfDescriptor.resolveHref(ovfFile, "disk1.vmdk")));
+        assertEquals(new File(folder.getRoot(), "shared.iso"),
+                new File(OvfDescriptor.resolveHref(ovfFile, "../shared.iso")));
+        // not escaped
+        assertEquals(new File(directory, "disk 1.vmdk"),
+                new File(OvfDescriptor.resolveHref(ovfFile, "disk 1.vmdk")));
+        assertEquals(URI.create("http://example.com/disk1.vmdk"),
+                OvfDescriptor.resolveHref(ovfFile, "http://example.com/disk1.vmdk"));
+    }
+
+    @Test
+    public void stopsAtFirstVirtualSystem() throws IOException {
+        // the content after the virtual system is not even well-formed
+        OvfDescriptor descriptor = parse(ENVELOPE_START
+                + "<References><File ovf:id=\"file1\" ovf:href=\"disk1.vmdk\"/></References>\n"
+                + "<VirtualSystem ovf:id=\"vm\"><Unclosed></VirtualSystem>\n");
+
+        assertEquals(1, descriptor.getFiles().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherRootElement() throws IOException {
+        parse("<?xml version=\"1.0\"?><Project/>");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedDescriptor() throws IOException {
+        parse(ENVELOPE_START + "<References><File></References>");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsExternalEntities() throws IOException {
+        File secret = folder.newFile("secret.txt");
+        try (FileOutputStream out = new FileOutputStream(secret)) {
+            out.write("secret".getBytes("UTF-8"));
+        }
+        String descriptor = "<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE Envelope [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>\n"
+                + ENVELOPE_START.substring(ENVELOPE_START.indexOf('\n') + 1)
+                + "<DiskSection><Info>&xxe;</Info></DiskSection>\n"
+                + "</Envelope>\n";
+
+        // the DTD is not read, so the entity is undeclared
+        parse(descriptor);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInternalEntityExpansion() throws IOException {
+        // entities expanding to each other, the billion laughs
+        String descriptor = "<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE Envelope [\n"
+                + "<!ENTITY lol \"lol\">\n"
+                + "<!ENTITY lol1 \"&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;\">\n"
+                + "<!ENTITY lol2 \"&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;&lol1;\">\n"
+                + "]>\n"
+                + ENVELOPE_START.substring(ENVELOPE_START.indexOf('\n') + 1)
+                + "<References><File ovf:id=\"file1\" ovf:href=\"&lol2;\"/></References>\n"
+                + "</Envelope>\n";
+
+        parse(descriptor);
+    }
+
+    private static OvfDescriptor parse(String descriptor) throws IOException {
+        return OvfDescriptor.parse(new ByteArrayInputStream(descriptor.getBytes("UTF-8")));
+    }
+}
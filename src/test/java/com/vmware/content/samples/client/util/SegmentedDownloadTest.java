@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2015 VMware, Inc.  All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ ******************************************************************************/
+package com.vmware.content.samples.client.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SegmentedDownloadTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void splitsIntoEqualSegments() {
+        List<long[]> segments = SegmentedDownload.splitIntoSegments(
+                ranges(0, 100 * MB), 100 * MB, 4);
+
+        assertSegments(segments, 0, 25 * MB, 25 * MB, 50 * MB, 50 * MB, 75 * MB, 75 * MB, 100 * MB);
+    }
+
+    @Test
+    public void roundsSegmentSizeUp() {
+        long length = 100 * MB + 1;
+        List<long[]> segments = SegmentedDownload.splitIntoSegments(ranges(0, length), length, 4);
+
+        assertEquals(4, segments.size());
+        assertEquals(length, segments.get(3)[1]);
+    }
+
+    @Test
+    public void keepsMinimumSegmentSize() {
+        List<long[]> segments = SegmentedDownload.splitIntoSegments(
+                ranges(0, 10 * MB), 10 * MB, 4);
+
+        assertSegments(segments, 0, 8 * MB, 8 * MB, 10 * MB);
+    }
+
+    @Test
+    public void splitsEachMissingRange() {
+        // 40 MB missing over two ranges, 10 MB per segment
+        List<long[]> segments = SegmentedDownload.splitIntoSegments(
+                ranges(0, 15 * MB, 50 * MB, 75 * MB), 40 * MB, 4);
+
+        assertSegments(segments, 0, 10 * MB, 10 * MB, 15 * MB,
+                50 * MB, 60 * MB, 60 * MB, 70 * MB, 70 * MB, 75 * MB);
+    }
+
+    @Test
+    public void coversRangesWithoutGapsOrOverlaps() {
+        long length = 1234567891L;
+        List<long[]> segments = SegmentedDownload.splitIntoSegments(ranges(0, length), length, 7);
+
+        long position = 0;
+        for (long[] segment : segments) {
+            assertEquals(position, segment[0]);
+            assertTrue(segment[1] > segment[0]);
+            position = segment[1];
+        }
+        assertEquals(length, position);
+        assertEquals(7, segments.size());
+    }
+
+    @Test
+    public void splitsNothingIntoNoSegment() {
+        assertTrue(SegmentedDownload.splitIntoSegments(
+                Collections.<long[]>emptyList(), 0, 4).isEmpty());
+    }
+
+    private static List<long[]> ranges(long... bounds) {
+        List<long[]> ranges = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i += 2) {
+            ranges.add(new long[] {bounds[i], bounds[i + 1]});
+        }
+        return ranges;
+    }
+
+    private static void assertSegments(List<long[]> segments, long... bounds) {
+        List<long[]> expected = ranges(bounds);
+        assertEquals(expected.size(), segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            assertArrayEquals(Arrays.toString(segments.get(i)), expected.get(i), segments.get(i));
+        }
+    }
+}